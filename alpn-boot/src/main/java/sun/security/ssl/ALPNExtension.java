@@ -19,6 +19,7 @@ package sun.security.ssl;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -42,16 +43,42 @@ public class ALPNExtension extends HelloExtension
     public ALPNExtension(HandshakeInStream input, int length) throws IOException
     {
         super(ExtensionType.get(ID));
-        length = input.getInt16();
-        while (length > 0)
+        byte[] list = input.getBytes16();
+        if (list.length + 2 != length || countProtocols(ByteBuffer.wrap(list), 0, list.length) < 0)
+            throw new SSLProtocolException("Invalid " + type + " extension");
+        int offset = 0;
+        while (offset < list.length)
         {
-            byte[] protocolBytes = input.getBytes8();
-            protocols.add(new String(protocolBytes, StandardCharsets.UTF_8));
-            length -= 1 + protocolBytes.length;
+            int protocolLength = list[offset] & 0xFF;
+            protocols.add(new String(list, offset + 1, protocolLength, StandardCharsets.UTF_8));
+            offset += 1 + protocolLength;
         }
         content = init();
     }
 
+    /**
+     * <p>Validates the protocol names of a protocol_name_list, without allocating.</p>
+     * <p>Used both when decoding the extension in a handshake and by {@link ClientHelloParser}.</p>
+     *
+     * @param buffer the buffer containing the list
+     * @param offset the offset of the first protocol name, after the list length
+     * @param end the offset of the end of the list
+     * @return the number of protocol names, or -1 if the list is malformed
+     */
+    static int countProtocols(ByteBuffer buffer, int offset, int end)
+    {
+        int count = 0;
+        while (offset < end)
+        {
+            int length = buffer.get(offset) & 0xFF;
+            if (length == 0 || end - offset - 1 < length)
+                return -1;
+            offset += 1 + length;
+            ++count;
+        }
+        return count;
+    }
+
     private byte[] init() throws SSLProtocolException
     {
         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
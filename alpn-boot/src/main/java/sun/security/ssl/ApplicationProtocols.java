@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * <p>Remembers the application protocol negotiated via ALPN for each
+ * session, so that the protocol of a resumed session is known without
+ * selecting it again.</p>
+ * <p>The protocols are recorded when the sessions are established, and
+ * when sessions are restored from a {@link SessionStore} or from a session
+ * ticket; they are forgotten when the sessions are garbage collected.
+ * They are kept apart from the session values, so applications can
+ * neither see nor overwrite them.</p>
+ *
+ * @see ResumingServerProvider
+ * @see ResumingClientProvider
+ */
+public final class ApplicationProtocols
+{
+    private static final WeakIdentityMap<SSLSession, String> protocols = new WeakIdentityMap<>();
+
+    private ApplicationProtocols()
+    {
+    }
+
+    /**
+     * @param session a client or server session
+     * @return the application protocol negotiated for the session, or null if none was negotiated
+     */
+    public static String get(SSLSession session)
+    {
+        return protocols.get(session);
+    }
+
+    static void put(SSLSession session, String protocol)
+    {
+        if (protocol == null)
+            protocols.remove(session);
+        else
+            protocols.put(session, protocol);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import sun.security.util.DerInputStream;
+import sun.security.util.DerValue;
+import sun.security.x509.AlgorithmId;
+import sun.security.x509.X509CertImpl;
+
+/**
+ * <p>A successful OCSPResponse with a basic response, see RFC 6960, section 4.2.</p>
+ * <p>The statuses are parsed from the DER encoding of the response; a
+ * status is trusted only when the response is signed by the issuer of
+ * the certificate, or by a responder that the issuer delegated for OCSP
+ * signing and that is included in the response.</p>
+ */
+final class BasicOCSPResponse
+{
+    private static final String OCSP_BASIC_RESPONSE = "1.3.6.1.5.5.7.48.1.1";
+    private static final String OCSP_SIGNING = "1.3.6.1.5.5.7.3.9";
+    // The tolerance on the clock of the responder, as in the JDK OCSP implementation.
+    private static final long MAX_CLOCK_SKEW = TimeUnit.MINUTES.toMillis(15);
+
+    private final byte[] tbsResponseData;
+    private final AlgorithmId signatureAlgorithm;
+    private final byte[] signature;
+    private final List<X509Certificate> certificates;
+    private final List<SingleResponse> responses;
+
+    private BasicOCSPResponse(byte[] tbsResponseData, AlgorithmId signatureAlgorithm, byte[] signature, List<X509Certificate> certificates, List<SingleResponse> responses)
+    {
+        this.tbsResponseData = tbsResponseData;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.signature = signature;
+        this.certificates = certificates;
+        this.responses = responses;
+    }
+
+    /**
+     * @param response the DER encoded OCSPResponse
+     * @param certificate the certificate
+     * @param issuer the issuer of the certificate
+     * @param now the current time in milliseconds since the epoch
+     * @return the status of the certificate, with the nextUpdate of the status or 0 if the responder did not set it
+     * @throws IOException if the response is not a current, signed basic response for the certificate
+     */
+    static RevocationCache.Result check(byte[] response, X509Certificate certificate, X509Certificate issuer, long now) throws IOException
+    {
+        BasicOCSPResponse basic = parse(response);
+        try
+        {
+            basic.verify(issuer, now);
+        }
+        catch (GeneralSecurityException x)
+        {
+            throw new IOException("Invalid OCSP response signature", x);
+        }
+        SingleResponse single = basic.getResponse(certificate, issuer);
+        if (single.thisUpdate > now + MAX_CLOCK_SKEW || single.nextUpdate > 0 && now > single.nextUpdate + MAX_CLOCK_SKEW)
+            throw new IOException("OCSP status of " + certificate.getSubjectX500Principal() + " is not current");
+        return new RevocationCache.Result(single.status, single.nextUpdate);
+    }
+
+    /**
+     * @param response the DER encoded OCSPResponse
+     * @return the basic response
+     * @throws IOException if the response is not successful, or is not a basic response
+     */
+    static BasicOCSPResponse parse(byte[] response) throws IOException
+    {
+        // OCSPResponse ::= SEQUENCE { responseStatus, responseBytes [0] EXPLICIT ResponseBytes OPTIONAL }
+        DerValue ocspResponse = new DerValue(response);
+        if (ocspResponse.tag != DerValue.tag_Sequence)
+            throw new IOException("Invalid OCSP response");
+        int responseStatus = ocspResponse.data.getEnumerated();
+        if (responseStatus != 0)
+            throw new IOException("Unsuccessful OCSP response " + responseStatus);
+        if (ocspResponse.data.available() == 0)
+            throw new IOException("Missing OCSP response bytes");
+        DerValue responseBytes = ocspResponse.data.getDerValue();
+        if (!responseBytes.isContextSpecific((byte)0))
+            throw new IOException("Invalid OCSP response bytes");
+        // ResponseBytes ::= SEQUENCE { responseType, response OCTET STRING }
+        DerInputStream bytes = responseBytes.data.getDerValue().data;
+        if (!OCSP_BASIC_RESPONSE.equals(bytes.getOID().toString()))
+            throw new IOException("Unsupported OCSP response type");
+
+        // BasicOCSPResponse ::= SEQUENCE { tbsResponseData, signatureAlgorithm, signature, certs [0] EXPLICIT OPTIONAL }
+        DerInputStream basic = new DerValue(bytes.getOctetString()).data;
+        DerValue tbsResponseData = basic.getDerValue();
+        byte[] signed = tbsResponseData.toByteArray();
+        AlgorithmId signatureAlgorithm = AlgorithmId.parse(basic.getDerValue());
+        byte[] signature = basic.getBitString();
+        List<X509Certificate> certificates = new ArrayList<>();
+        if (basic.available() > 0)
+        {
+            DerValue certs = basic.getDerValue();
+            if (certs.isContextSpecific((byte)0))
+            {
+                try
+                {
+                    for (DerValue certificate : certs.data.getSequence(1))
+                        certificates.add(new X509CertImpl(certificate));
+                }
+                catch (GeneralSecurityException x)
+                {
+                    throw new IOException("Invalid OCSP responder certificate", x);
+                }
+            }
+        }
+
+        // ResponseData ::= SEQUENCE { version [0] EXPLICIT OPTIONAL, responderID, producedAt, responses, responseExtensions [1] EXPLICIT OPTIONAL }
+        // The responderID is not needed: the signature is verified with the issuer, then with the included certificates.
+        DerInputStream data = tbsResponseData.data;
+        if (data.getDerValue().isContextSpecific((byte)0))
+            data.getDerValue();
+        data.getGeneralizedTime();
+        List<SingleResponse> responses = new ArrayList<>();
+        for (DerValue singleResponse : data.getSequence(1))
+            responses.add(new SingleResponse(singleResponse.data));
+        return new BasicOCSPResponse(signed, signatureAlgorithm, signature, certificates, responses);
+    }
+
+    /**
+     * @return the value of the subjectPublicKey BIT STRING of the certificate, the input of the key hash of a CertID
+     */
+    static byte[] subjectPublicKey(X509Certificate certificate) throws IOException
+    {
+        DerValue publicKeyInfo = new DerValue(certificate.getPublicKey().getEncoded());
+        publicKeyInfo.data.getDerValue();
+        return publicKeyInfo.data.getUnalignedBitString().toByteArray();
+    }
+
+    /**
+     * @param issuer the issuer of the certificates of the response
+     * @param now the current time in milliseconds since the epoch
+     * @throws GeneralSecurityException if neither the issuer nor a responder delegated by the issuer signed the response
+     */
+    void verify(X509Certificate issuer, long now) throws GeneralSecurityException
+    {
+        if (verify(issuer.getPublicKey()))
+            return;
+        for (X509Certificate responder : certificates)
+        {
+            // A delegated responder is issued by the issuer for OCSP signing, see RFC 6960, section 4.2.2.2.
+            if (!issuer.getSubjectX500Principal().equals(responder.getIssuerX500Principal()))
+                continue;
+            try
+            {
+                List<String> usages = responder.getExtendedKeyUsage();
+                if (usages == null || !usages.contains(OCSP_SIGNING))
+                    continue;
+                responder.verify(issuer.getPublicKey());
+                responder.checkValidity(new Date(now));
+            }
+            catch (GeneralSecurityException x)
+            {
+                continue;
+            }
+            if (verify(responder.getPublicKey()))
+                return;
+        }
+        throw new SignatureException("OCSP response not signed by " + issuer.getSubjectX500Principal() + " or a delegated responder");
+    }
+
+    private boolean verify(PublicKey key) throws GeneralSecurityException
+    {
+        Signature verifier = Signature.getInstance(signatureAlgorithm.getName());
+        try
+        {
+            verifier.initVerify(key);
+            verifier.update(tbsResponseData);
+            return verifier.verify(signature);
+        }
+        catch (SignatureException | InvalidKeyException x)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @throws IOException if the response does not contain the status of the certificate
+     */
+    private SingleResponse getResponse(X509Certificate certificate, X509Certificate issuer) throws IOException
+    {
+        for (SingleResponse response : responses)
+        {
+            if (response.matches(certificate, issuer))
+                return response;
+        }
+        throw new IOException("No OCSP status for " + certificate.getSubjectX500Principal());
+    }
+
+    private static final class SingleResponse
+    {
+        private final AlgorithmId hashAlgorithm;
+        private final byte[] issuerNameHash;
+        private final byte[] issuerKeyHash;
+        private final BigInteger serialNumber;
+        private final RevocationCache.Status status;
+        private final long thisUpdate;
+        private final long nextUpdate;
+
+        private SingleResponse(DerInputStream single) throws IOException
+        {
+            // SingleResponse ::= SEQUENCE { certID, certStatus, thisUpdate, nextUpdate [0] EXPLICIT OPTIONAL, singleExtensions [1] EXPLICIT OPTIONAL }
+            // CertID ::= SEQUENCE { hashAlgorithm, issuerNameHash, issuerKeyHash, serialNumber }
+            DerInputStream certID = single.getDerValue().data;
+            hashAlgorithm = AlgorithmId.parse(certID.getDerValue());
+            issuerNameHash = certID.getOctetString();
+            issuerKeyHash = certID.getOctetString();
+            serialNumber = certID.getBigInteger();
+            // CertStatus ::= CHOICE { good [0] IMPLICIT NULL, revoked [1] IMPLICIT RevokedInfo, unknown [2] IMPLICIT UnknownInfo }
+            DerValue certStatus = single.getDerValue();
+            if (certStatus.isContextSpecific((byte)0))
+                status = RevocationCache.Status.GOOD;
+            else if (certStatus.isContextSpecific((byte)1))
+                status = RevocationCache.Status.REVOKED;
+            else
+                status = RevocationCache.Status.UNKNOWN;
+            thisUpdate = single.getGeneralizedTime().getTime();
+            long next = 0;
+            if (single.available() > 0)
+            {
+                DerValue value = single.getDerValue();
+                if (value.isContextSpecific((byte)0))
+                    next = value.data.getGeneralizedTime().getTime();
+            }
+            nextUpdate = next;
+        }
+
+        private boolean matches(X509Certificate certificate, X509Certificate issuer) throws IOException
+        {
+            if (!serialNumber.equals(certificate.getSerialNumber()))
+                return false;
+            MessageDigest digest;
+            try
+            {
+                digest = MessageDigest.getInstance(hashAlgorithm.getName());
+            }
+            catch (GeneralSecurityException x)
+            {
+                return false;
+            }
+            return MessageDigest.isEqual(issuerNameHash, digest.digest(issuer.getSubjectX500Principal().getEncoded())) &&
+                    MessageDigest.isEqual(issuerKeyHash, digest.digest(subjectPublicKey(issuer)));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * <p>A Certificate handshake message that carries the hash of the server
+ * certificate chain instead of the chain, when the client cached the chain,
+ * see RFC 7924, section 4.1.</p>
+ */
+final class CachedCertificateMsg extends HandshakeMessage
+{
+    private final byte[] hash;
+
+    CachedCertificateMsg(byte[] hash)
+    {
+        this.hash = hash;
+    }
+
+    CachedCertificateMsg(HandshakeInStream input) throws IOException
+    {
+        this.hash = input.getBytes8();
+    }
+
+    byte[] getHash()
+    {
+        return hash;
+    }
+
+    @Override
+    int messageType()
+    {
+        return ht_certificate;
+    }
+
+    @Override
+    int messageLength()
+    {
+        return 1 + hash.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream output) throws IOException
+    {
+        output.putBytes8(hash);
+    }
+
+    @Override
+    void print(PrintStream output) throws IOException
+    {
+        output.println("*** Certificate chain, cached (" + hash.length + " bytes hash)");
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.net.ssl.SSLProtocolException;
+
+/**
+ * <p>The cached_info extension, see RFC 7924.</p>
+ * <p>In the ClientHello, the extension lists the hashes of the objects that
+ * the client cached from previous handshakes with the server; in the
+ * ServerHello, it lists the types of the objects that the server replaces
+ * with their hash.
+ * Only the server certificate chain, of type {@link #TYPE_CERT}, is
+ * supported.</p>
+ */
+public class CachedInfoExtension extends HelloExtension
+{
+    public static final int TYPE_CERT = 1;
+
+    private static final int ID = ExtensionType.EXT_CACHED_INFO.id;
+
+    // The CachedObject list, whose format depends on the sender.
+    private final byte[] data;
+
+    /**
+     * <p>Creates the extension of a ServerHello that replaces the server certificate chain.</p>
+     */
+    public CachedInfoExtension()
+    {
+        super(ExtensionType.get(ID));
+        this.data = new byte[]{0, 1, TYPE_CERT};
+    }
+
+    /**
+     * <p>Creates the extension of a ClientHello that offers a cached server certificate chain.</p>
+     *
+     * @param certificateHash the hash of the cached Certificate message
+     */
+    public CachedInfoExtension(byte[] certificateHash)
+    {
+        super(ExtensionType.get(ID));
+        int length = 1 + 1 + certificateHash.length;
+        byte[] data = new byte[2 + length];
+        data[0] = (byte)(length >>> 8);
+        data[1] = (byte)length;
+        data[2] = TYPE_CERT;
+        data[3] = (byte)certificateHash.length;
+        System.arraycopy(certificateHash, 0, data, 4, certificateHash.length);
+        this.data = data;
+    }
+
+    public CachedInfoExtension(HandshakeInStream input, int length) throws IOException
+    {
+        super(ExtensionType.get(ID));
+        if (length < 2 || input.getInt16() != length - 2)
+            throw new SSLProtocolException("Invalid " + type + " extension");
+        data = new byte[length];
+        data[0] = (byte)((length - 2) >>> 8);
+        data[1] = (byte)(length - 2);
+        input.read(data, 2, length - 2);
+    }
+
+    /**
+     * @return the hashes of the server certificate chains cached by the client, in a ClientHello
+     * @throws SSLProtocolException if the extension is malformed
+     */
+    public List<byte[]> getCertificateHashes() throws SSLProtocolException
+    {
+        List<byte[]> result = Collections.emptyList();
+        int offset = 2;
+        while (offset < data.length)
+        {
+            if (offset + 2 > data.length)
+                throw new SSLProtocolException("Invalid " + type + " extension");
+            int objectType = data[offset] & 0xFF;
+            int hashLength = data[offset + 1] & 0xFF;
+            offset += 2;
+            if (hashLength == 0 || offset + hashLength > data.length)
+                throw new SSLProtocolException("Invalid " + type + " extension");
+            if (objectType == TYPE_CERT)
+            {
+                if (result.isEmpty())
+                    result = new ArrayList<>(1);
+                byte[] hash = new byte[hashLength];
+                System.arraycopy(data, offset, hash, 0, hashLength);
+                result.add(hash);
+            }
+            offset += hashLength;
+        }
+        return result;
+    }
+
+    /**
+     * @return whether the server replaces its certificate chain with its hash, in a ServerHello
+     */
+    public boolean isCertificateReplaced()
+    {
+        for (int i = 2; i < data.length; ++i)
+        {
+            if ((data[i] & 0xFF) == TYPE_CERT)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    int length()
+    {
+        return 2 + 2 + data.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream out) throws IOException
+    {
+        out.putInt16(ID);
+        out.putInt16(data.length);
+        out.write(data, 0, data.length);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Extension %s, length: %d", type, data.length);
+    }
+}
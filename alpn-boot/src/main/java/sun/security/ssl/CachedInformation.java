@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+
+import sun.security.util.Cache;
+
+/**
+ * <p>Cached Information, see RFC 7924, so that full handshakes between
+ * peers that talked before replace the server certificate chain with its
+ * hash.</p>
+ * <p>Installed on a client session context, it remembers the certificate
+ * chain validated for each host and port, and offers its hash to the
+ * server; the chain is still validated by the trust manager, so it is
+ * worth combining with a {@link TrustedChainCache} on the same context.
+ * Installed on a server session context, it sends the hash instead of the
+ * chain when a client offers the hash of the current server chain, and
+ * remembers the hashes of the server chains.
+ * In both cases at most {@code size} chains are kept, the least recently
+ * used being evicted first.</p>
+ * <pre>
+ * CachedInformation.install(sslContext.getClientSessionContext(), new CachedInformation(256));
+ * </pre>
+ * <p>The hash is the hash of the body of the Certificate message that
+ * would carry the chain, computed with the hash function of the PRF of the
+ * negotiated cipher suite, or SHA-256 before TLS 1.2.
+ * Clients offer the hash computed in the handshake that validated the
+ * chain; servers compute it for the cipher suite of each handshake, so a
+ * chain cached by a handshake with another hash function is a miss.</p>
+ * <p>Only certificates and their hashes are kept, no secrets.</p>
+ */
+public final class CachedInformation
+{
+    private static final WeakIdentityMap<SSLSessionContext, CachedInformation> infos = new WeakIdentityMap<>();
+
+    private final Cache<String, Chain> serverChains;
+    private final Cache<Key, byte[]> hashes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param size the maximum number of certificate chains to keep
+     */
+    public CachedInformation(int size)
+    {
+        if (size <= 0)
+            throw new IllegalArgumentException("Invalid size " + size);
+        this.serverChains = Cache.newHardMemoryCache(size);
+        this.hashes = Cache.newHardMemoryCache(size);
+    }
+
+    /**
+     * @param context the client or server session context of a {@code SSLContext}
+     * @param info the cached information for the handshakes of the context
+     */
+    public static void install(SSLSessionContext context, CachedInformation info)
+    {
+        infos.put(context, info);
+    }
+
+    /**
+     * @param context the client or server session context of a {@code SSLContext}
+     * @return the cached information installed on the context, or null if none is installed
+     */
+    public static CachedInformation get(SSLSessionContext context)
+    {
+        return infos.get(context);
+    }
+
+    /**
+     * @param context the client or server session context of a {@code SSLContext}
+     * @return the cached information that was installed on the context, or null if none was installed
+     */
+    public static CachedInformation uninstall(SSLSessionContext context)
+    {
+        return infos.remove(context);
+    }
+
+    /**
+     * @return the number of Certificate messages replaced by their hash
+     */
+    public long getHits()
+    {
+        return hits.longValue();
+    }
+
+    /**
+     * @return the number of cached chains offered or asked for that did not match the server chain
+     */
+    public long getMisses()
+    {
+        return misses.longValue();
+    }
+
+    /**
+     * <p>Removes all the chains and hashes.</p>
+     */
+    public void clear()
+    {
+        serverChains.clear();
+        hashes.clear();
+    }
+
+    /**
+     * @return the server chain cached by a client for the given host and port, or null
+     */
+    Chain getServerChain(String host, int port)
+    {
+        return host == null ? null : serverChains.get(key(host, port));
+    }
+
+    /**
+     * <p>Remembers, on a client, the server chain validated for the given host and port.</p>
+     *
+     * @param hashAlgorithm the hash algorithm of the handshake that validated the chain
+     */
+    void putServerChain(String host, int port, X509Certificate[] chain, String hashAlgorithm) throws SSLException
+    {
+        if (host != null)
+            serverChains.put(key(host, port), new Chain(chain, hash(chain, hashAlgorithm)));
+    }
+
+    /**
+     * <p>Removes, on a client, the server chain cached for the given host and port.</p>
+     */
+    void removeServerChain(String host, int port)
+    {
+        if (host != null)
+            serverChains.remove(key(host, port));
+    }
+
+    /**
+     * @param chain the chain that the server sends
+     * @param hashAlgorithm the hash algorithm of the handshake
+     * @param offered the hashes offered by the client
+     * @return the hash of the chain if the client offered it, or null
+     */
+    byte[] accept(X509Certificate[] chain, String hashAlgorithm, List<byte[]> offered) throws SSLException
+    {
+        Key key = new Key(chain, hashAlgorithm);
+        byte[] hash = hashes.get(key);
+        if (hash == null)
+        {
+            hash = hash(chain, hashAlgorithm);
+            hashes.put(key, hash);
+        }
+        for (byte[] candidate : offered)
+        {
+            if (MessageDigest.isEqual(hash, candidate))
+            {
+                hits.increment();
+                return hash;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    void hit()
+    {
+        hits.increment();
+    }
+
+    void miss()
+    {
+        misses.increment();
+    }
+
+    private static String key(String host, int port)
+    {
+        return host.toLowerCase(Locale.ENGLISH) + ":" + port;
+    }
+
+    /**
+     * @return the hash function of the PRF of the cipher suite, see RFC 7924, section 3
+     */
+    static String hashAlgorithm(ProtocolVersion protocolVersion, CipherSuite cipherSuite)
+    {
+        // TLS 1.0 and 1.1 combine MD5 and SHA-1 in their PRF.
+        if (protocolVersion.v < ProtocolVersion.TLS12.v)
+            return "SHA-256";
+        return cipherSuite.prfAlg.getPRFHashAlg();
+    }
+
+    private static byte[] hash(X509Certificate[] chain, String hashAlgorithm) throws SSLException
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance(hashAlgorithm);
+            new EncodedCertificateMsg(chain).digest(digest);
+            return digest.digest();
+        }
+        catch (NoSuchAlgorithmException x)
+        {
+            throw new SSLException("Could not hash certificates", x);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[hits=%d,misses=%d]", getClass().getSimpleName(), hashCode(), getHits(), getMisses());
+    }
+
+    private static class Key
+    {
+        private final List<X509Certificate> chain;
+        private final String hashAlgorithm;
+
+        private Key(X509Certificate[] chain, String hashAlgorithm)
+        {
+            this.chain = Arrays.asList(chain);
+            this.hashAlgorithm = hashAlgorithm;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key that = (Key)obj;
+            return chain.equals(that.chain) && hashAlgorithm.equals(that.hashAlgorithm);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * chain.hashCode() + hashAlgorithm.hashCode();
+        }
+    }
+
+    static final class Chain
+    {
+        final X509Certificate[] certificates;
+        final byte[] hash;
+
+        private Chain(X509Certificate[] certificates, byte[] hash)
+        {
+            this.certificates = certificates;
+            this.hash = hash;
+        }
+    }
+}
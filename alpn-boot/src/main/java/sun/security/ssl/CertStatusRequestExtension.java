@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+
+/**
+ * <p>The status_request extension, see RFC 6066, section 8.</p>
+ * <p>In the ClientHello, the extension asks the server to staple the OCSP
+ * response of its certificate; only the status type is retained, the
+ * responder ids and request extensions are skipped, and clients send
+ * none.
+ * In the ServerHello, the extension is empty and announces that the server
+ * will send a CertificateStatus message.</p>
+ */
+public class CertStatusRequestExtension extends HelloExtension
+{
+    public static final int STATUS_TYPE_OCSP = 1;
+
+    private static final int ID = ExtensionType.EXT_STATUS_REQUEST.id;
+
+    private final int statusType;
+
+    public CertStatusRequestExtension()
+    {
+        super(ExtensionType.get(ID));
+        this.statusType = 0;
+    }
+
+    /**
+     * @param statusType the certificate status type requested by the client
+     */
+    public CertStatusRequestExtension(int statusType)
+    {
+        super(ExtensionType.get(ID));
+        this.statusType = statusType;
+    }
+
+    public CertStatusRequestExtension(HandshakeInStream input, int length) throws IOException
+    {
+        super(ExtensionType.get(ID));
+        if (length > 0)
+        {
+            statusType = input.getInt8();
+            int remaining = length - 1;
+            if (remaining > 0)
+                input.read(new byte[remaining], 0, remaining);
+        }
+        else
+        {
+            statusType = 0;
+        }
+    }
+
+    /**
+     * @return the certificate status type requested by the client, or 0 in a ServerHello
+     */
+    public int getStatusType()
+    {
+        return statusType;
+    }
+
+    @Override
+    int length()
+    {
+        return 2 + 2 + (statusType == 0 ? 0 : 5);
+    }
+
+    @Override
+    void send(HandshakeOutStream out) throws IOException
+    {
+        out.putInt16(ID);
+        if (statusType == 0)
+        {
+            out.putInt16(0);
+        }
+        else
+        {
+            // The status type, then empty responder_id_list and request_extensions.
+            out.putInt16(5);
+            out.putInt8(statusType);
+            out.putInt16(0);
+            out.putInt16(0);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Extension %s, status type: %d", type, statusType);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * <p>The CertificateStatus handshake message, see RFC 6066, section 8.</p>
+ * <p>The server sends it right after its Certificate message, with the
+ * OCSP response of its certificate.</p>
+ */
+final class CertificateStatusMsg extends HandshakeMessage
+{
+    static final byte ht_certificate_status = 22;
+
+    private final int statusType;
+    private final byte[] response;
+
+    CertificateStatusMsg(byte[] response)
+    {
+        this.statusType = CertStatusRequestExtension.STATUS_TYPE_OCSP;
+        this.response = response;
+    }
+
+    CertificateStatusMsg(HandshakeInStream input) throws IOException
+    {
+        this.statusType = input.getInt8();
+        this.response = input.getBytes24();
+    }
+
+    int getStatusType()
+    {
+        return statusType;
+    }
+
+    byte[] getResponse()
+    {
+        return response;
+    }
+
+    @Override
+    int messageType()
+    {
+        return ht_certificate_status;
+    }
+
+    @Override
+    int messageLength()
+    {
+        return 1 + 3 + response.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream output) throws IOException
+    {
+        output.putInt8(statusType);
+        output.putInt24(response.length);
+        output.write(response, 0, response.length);
+    }
+
+    @Override
+    void print(PrintStream output) throws IOException
+    {
+        output.println("*** CertificateStatus, status type: " + statusType + ", response length: " + response.length);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.util.List;
+
+import javax.net.ssl.SSLException;
+
+import org.eclipse.jetty.alpn.ALPN;
+
+/**
+ * <p>A {@link ALPN.ServerProvider} that negotiates the application protocol
+ * together with the cipher suite.</p>
+ * <p>While choosing the cipher suite, the server defers the cipher suites that
+ * are not permitted for all the protocols offered by the client, so that a
+ * cipher suite suitable for every offered protocol is preferred.
+ * Then {@link #select(List, String)} is called with only the protocols that
+ * are permitted for the chosen cipher suite.</p>
+ * <p>The HTTP/2 cipher suite blacklist (see {@link HTTP2Cipher}) is always
+ * enforced for the {@code h2} protocol, before {@link #permits(String, String)}
+ * is called.</p>
+ */
+public interface CipherSuiteServerProvider extends ALPN.ServerProvider
+{
+    /**
+     * @param protocol the application protocol offered by the client
+     * @param cipherSuite the candidate cipher suite
+     * @return whether the application protocol can be negotiated with the cipher suite
+     */
+    default boolean permits(String protocol, String cipherSuite)
+    {
+        return true;
+    }
+
+    /**
+     * @param protocols the protocols offered by the client that are permitted for the cipher suite
+     * @param cipherSuite the cipher suite chosen for the connection
+     * @return the selected protocol, or null to not send the ALPN extension
+     * @throws SSLException if the application protocol cannot be negotiated
+     */
+    default String select(List<String> protocols, String cipherSuite) throws SSLException
+    {
+        return select(protocols);
+    }
+}
@@ -51,6 +51,7 @@ import static sun.security.ssl.CipherSuite.KeyExchange.*;
 
 // ALPN_CHANGES_BEGIN
 import org.eclipse.jetty.alpn.ALPN;
+import sun.security.util.Cache;
 // ALPN_CHANGES_END
 
 /**
@@ -70,6 +71,26 @@ final class ClientHandshaker extends Handshaker {
     // the server's public key from its certificate.
     private PublicKey serverKey;
 
+    // ALPN_CHANGES_BEGIN
+    // the application protocols offered via ALPN, read once per handshake
+    private List<String> alpnProtocols;
+    private boolean alpnProtocolsRead;
+    // the server certificate chain offered via cached_info, and whether the server replaced it with its hash
+    private CachedInformation.Chain cachedServerChain;
+    private boolean cachedServerChainReplaced;
+    // whether the client offered to receive a raw public key, and whether the server sends one
+    private boolean serverRawPublicKeyOffered;
+    private boolean serverRawPublicKey;
+    // whether the client offered the SessionTicket extension, and whether the server announced a NewSessionTicket
+    private boolean sessionTicketOffered;
+    private boolean sessionTicketExpected;
+    // whether the client sent status_request, whether the server announced a CertificateStatus,
+    // and the server chain whose revocation check waits for the CertificateStatus
+    private boolean certificateStatusOffered;
+    private boolean certificateStatusExpected;
+    private X509Certificate[] certificateStatusChain;
+    // ALPN_CHANGES_END
+
     // the server's ephemeral public key from the server key exchange message
     // for ECDHE/ECDH_anon and RSA_EXPORT.
     private PublicKey ephemeralServerKey;
@@ -196,6 +217,27 @@ final class ClientHandshaker extends Handshaker {
     @Override
     void processMessage(byte type, int messageLen) throws IOException {
 
+        // ALPN_CHANGES_BEGIN
+        // The handshake state does not know NewSessionTicket, see RFC 5077.
+        if (type == NewSessionTicketMsg.ht_new_session_ticket)
+        {
+            newSessionTicket(new NewSessionTicketMsg(input));
+            return;
+        }
+        // Nor CertificateStatus, see RFC 6066, which the server may omit even if announced.
+        if (type == CertificateStatusMsg.ht_certificate_status)
+        {
+            certificateStatus(new CertificateStatusMsg(input));
+            return;
+        }
+        if (certificateStatusChain != null)
+        {
+            X509Certificate[] peerCerts = certificateStatusChain;
+            certificateStatusChain = null;
+            checkRevocation(peerCerts);
+        }
+        // ALPN_CHANGES_END
+
         // check the handshake state
         List<Byte> ignoredOptStates = handshakeState.check(type);
 
@@ -222,7 +264,17 @@ final class ClientHandshaker extends Handshaker {
                     "unexpected server cert chain");
                 // NOTREACHED
             }
-            CertificateMsg certificateMsg = new CertificateMsg(input);
+            // ALPN_CHANGES_BEGIN
+            if (serverRawPublicKey)
+            {
+                RawPublicKeyMsg rawPublicKeyMsg = new RawPublicKeyMsg(input);
+                handshakeState.update(rawPublicKeyMsg, resumingSession);
+                serverKey = serverRawPublicKey(rawPublicKeyMsg);
+                break;
+            }
+            CertificateMsg certificateMsg = cachedServerChainReplaced ?
+                    cachedCertificateMsg(new CachedCertificateMsg(input)) : new CertificateMsg(input);
+            // ALPN_CHANGES_END
             handshakeState.update(certificateMsg, resumingSession);
             this.serverCertificate(certificateMsg);
             serverKey =
@@ -645,6 +697,10 @@ final class ClientHandshaker extends Handshaker {
             }
         }
 
+        // ALPN_CHANGES_BEGIN
+        sessionTicketExpected = sessionTicketOffered && mesg.extensions.get(ExtensionType.EXT_SESSION_TICKET) != null;
+        // ALPN_CHANGES_END
+
         // check the "extended_master_secret" extension
         ExtendedMasterSecretExtension extendedMasterSecretExt =
                 (ExtendedMasterSecretExtension)mesg.extensions.get(
@@ -717,6 +773,10 @@ final class ClientHandshaker extends Handshaker {
                     && (type != ExtensionType.EXT_SERVER_NAME)
                     // ALPN_CHANGES_BEGIN
                     && (type != ExtensionType.EXT_ALPN)
+                    && (type != ExtensionType.EXT_CACHED_INFO)
+                    && (type != ExtensionType.EXT_SERVER_CERTIFICATE_TYPE)
+                    && (type != ExtensionType.EXT_SESSION_TICKET || !sessionTicketOffered)
+                    && (type != ExtensionType.EXT_STATUS_REQUEST || !certificateStatusOffered)
                     // ALPN_CHANGES_END
                     && (type != ExtensionType.EXT_RENEGOTIATION_INFO)
                     && (type != ExtensionType.EXT_EXTENDED_MASTER_SECRET)){
@@ -740,10 +800,149 @@ final class ClientHandshaker extends Handshaker {
         // ALPN_CHANGES_BEGIN
         if (isInitialHandshake)
             alpnSelected(mesg);
+        cachedInfoNegotiated(mesg);
+        serverCertificateTypeNegotiated(mesg);
+        certificateStatusExpected = certificateStatusOffered && mesg.extensions.get(ExtensionType.EXT_STATUS_REQUEST) != null;
         // ALPN_CHANGES_END
     }
 
     // ALPN_CHANGES_BEGIN
+    private List<String> alpnProtocols()
+    {
+        if (!alpnProtocolsRead)
+        {
+            alpnProtocolsRead = true;
+            ALPN.ClientProvider provider = (ALPN.ClientProvider)(conn != null ? ALPN.get(conn) : ALPN.get(engine));
+            alpnProtocols = provider == null ? null : provider.protocols();
+        }
+        return alpnProtocols;
+    }
+
+    private SSLSessionImpl findResumableSession()
+    {
+        SSLSessionContextImpl context = (SSLSessionContextImpl)sslContext.engineGetClientSessionContext();
+        ClientSessionCache cache = ClientSessionCache.get(context);
+        if (cache == null)
+            return context.get(getHostSE(), getPortSE());
+        SSLSessionImpl session = cache.get(getHostSE(), getPortSE(), isInitialHandshake ? alpnProtocols() : null);
+        if (ALPN.debug)
+            System.err.println("[C] Client session cache " + (session == null ? "miss" : "hit " + session) + " for " + (conn != null ? conn : engine));
+        return session;
+    }
+
+    private void storeResumableSession(SSLSessionImpl session)
+    {
+        SSLSessionContextImpl context = (SSLSessionContextImpl)sslContext.engineGetClientSessionContext();
+        ClientSessionCache cache = ClientSessionCache.get(context);
+        if (cache == null)
+            context.put(session);
+        else
+            cache.put(session, isInitialHandshake ? alpnProtocols() : null, ApplicationProtocols.get(session));
+    }
+
+    private void newSessionTicket(NewSessionTicketMsg mesg) throws IOException
+    {
+        if (!sessionTicketExpected)
+            fatalSE(Alerts.alert_unexpected_message, "Server sent an unannounced NewSessionTicket");
+        sessionTicketExpected = false;
+        if (debug != null && Debug.isOn("handshake"))
+            mesg.print(System.out);
+        // An empty ticket means that the server could not issue one.
+        byte[] ticket = mesg.getTicket();
+        SessionTickets.ticket(session, ticket.length == 0 ? null : ticket);
+        if (ALPN.debug)
+            System.err.println("[C] Session ticket " + (ticket.length == 0 ? "not issued" : "received") + " for " + (conn != null ? conn : engine));
+    }
+
+    private void certificateStatus(CertificateStatusMsg mesg) throws IOException
+    {
+        X509Certificate[] peerCerts = certificateStatusChain;
+        if (peerCerts == null)
+            fatalSE(Alerts.alert_unexpected_message, "Server sent an unannounced CertificateStatus");
+        certificateStatusChain = null;
+        if (debug != null && Debug.isOn("handshake"))
+            mesg.print(System.out);
+        if (mesg.getStatusType() != CertStatusRequestExtension.STATUS_TYPE_OCSP)
+            fatalSE(Alerts.alert_illegal_parameter, "Server sent an unrequested certificate status type: " + mesg.getStatusType());
+        RevocationCache cache = RevocationCache.get(sslContext.engineGetClientSessionContext());
+        X509Certificate issuer = findIssuer(peerCerts);
+        if (cache != null && issuer != null)
+        {
+            try
+            {
+                cache.stapled(peerCerts[0], issuer, BasicOCSPResponse.check(mesg.getResponse(), peerCerts[0], issuer, System.currentTimeMillis()));
+            }
+            catch (IOException x)
+            {
+                // The certificate is checked as if no response was stapled.
+                if (ALPN.debug)
+                    System.err.println("[C] Invalid stapled OCSP response for " + peerCerts[0].getSubjectX500Principal() + ": " + x);
+            }
+        }
+        checkRevocation(peerCerts);
+    }
+
+    private void serverCertificateTypeNegotiated(ServerHello mesg) throws IOException
+    {
+        ServerCertificateTypeExtension extension = (ServerCertificateTypeExtension)mesg.extensions.get(ExtensionType.EXT_SERVER_CERTIFICATE_TYPE);
+        if (extension == null)
+            return;
+        if (!serverRawPublicKeyOffered)
+            fatalSE(Alerts.alert_unsupported_extension, "Server sent an unrequested server_certificate_type extension");
+        int certificateType = extension.getCertificateType();
+        if (certificateType == ServerCertificateTypeExtension.TYPE_RAW_PUBLIC_KEY)
+            serverRawPublicKey = true;
+        else if (certificateType != ServerCertificateTypeExtension.TYPE_X509)
+            fatalSE(Alerts.alert_illegal_parameter, "Server sent an unoffered certificate type: " + certificateType);
+    }
+
+    private PublicKey serverRawPublicKey(RawPublicKeyMsg mesg) throws IOException
+    {
+        if (debug != null && Debug.isOn("handshake"))
+            mesg.print(System.out);
+        PublicKey publicKey = mesg.getPublicKey();
+        RawPublicKeys rawPublicKeys = RawPublicKeys.get(sslContext.engineGetClientSessionContext());
+        try
+        {
+            rawPublicKeys.getVerifier().verify(publicKey, getHostSE(), getPortSE());
+        }
+        catch (CertificateException x)
+        {
+            fatalSE(Alerts.alert_bad_certificate, x);
+        }
+        if (ALPN.debug)
+            System.err.println("[C] Raw public key verified for " + (conn != null ? conn : engine));
+        rawPublicKeys.used();
+        RawPublicKeys.peerPublicKey(session, publicKey);
+        return publicKey;
+    }
+
+    private void cachedInfoNegotiated(ServerHello mesg) throws IOException
+    {
+        CachedInfoExtension extension = (CachedInfoExtension)mesg.extensions.get(ExtensionType.EXT_CACHED_INFO);
+        if (extension == null)
+        {
+            if (cachedServerChain != null)
+                CachedInformation.get(sslContext.engineGetClientSessionContext()).miss();
+            return;
+        }
+        if (cachedServerChain == null)
+            fatalSE(Alerts.alert_unsupported_extension, "Server sent an unrequested cached_info extension");
+        cachedServerChainReplaced = extension.isCertificateReplaced();
+    }
+
+    private CertificateMsg cachedCertificateMsg(CachedCertificateMsg mesg) throws IOException
+    {
+        if (debug != null && Debug.isOn("handshake"))
+            mesg.print(System.out);
+        if (!MessageDigest.isEqual(mesg.getHash(), cachedServerChain.hash))
+            fatalSE(Alerts.alert_illegal_parameter, "Server sent the hash of another certificate chain");
+        if (ALPN.debug)
+            System.err.println("[C] Cached certificate chain used for " + (conn != null ? conn : engine));
+        CachedInformation.get(sslContext.engineGetClientSessionContext()).hit();
+        return new CertificateMsg(cachedServerChain.certificates);
+    }
+
     private void alpnSelected(ServerHello mesg) throws IOException
     {
         ALPN.ClientProvider provider = (ALPN.ClientProvider)(conn != null ? ALPN.get(conn) : ALPN.get(engine));
@@ -757,9 +956,19 @@ final class ClientHandshaker extends Handshaker {
                 try
                 {
                     String protocol = protocols == null || protocols.isEmpty() ? null : protocols.get(0);
-                    if (ALPN.debug)
-                        System.err.println("[C] ALPN protocol '" + protocol + "' selected by server for " + ssl);
-                    provider.selected(protocol);
+                    if (provider instanceof ResumingClientProvider && resumingSession && protocol != null && protocol.equals(ApplicationProtocols.get(session)))
+                    {
+                        if (ALPN.debug)
+                            System.err.println("[C] ALPN protocol '" + protocol + "' resumed for " + ssl);
+                        ((ResumingClientProvider)provider).resumed(protocol);
+                    }
+                    else
+                    {
+                        if (ALPN.debug)
+                            System.err.println("[C] ALPN protocol '" + protocol + "' selected by server for " + ssl);
+                        provider.selected(protocol);
+                        ApplicationProtocols.put(session, protocol);
+                    }
                 }
                 catch (Throwable x)
                 {
@@ -1288,6 +1497,11 @@ final class ClientHandshaker extends Handshaker {
          * so there are no threats any more associated with partially
          * completed handshakes.
          */
+        // ALPN_CHANGES_BEGIN
+        if (sessionTicketExpected)
+            fatalSE(Alerts.alert_unexpected_message, "Server did not send the announced NewSessionTicket");
+        // ALPN_CHANGES_END
+
         if (resumingSession) {
             input.digestNow();
             sendChangeCipherAndFinish(true);
@@ -1298,9 +1512,9 @@ final class ClientHandshaker extends Handshaker {
 
         if (!resumingSession) {
             if (session.isRejoinable()) {
-                ((SSLSessionContextImpl) sslContext
-                        .engineGetClientSessionContext())
-                        .put(session);
+                // ALPN_CHANGES_BEGIN
+                storeResumableSession(session);
+                // ALPN_CHANGES_END
                 if (debug != null && Debug.isOn("session")) {
                     System.out.println("%% Cached client session: " + session);
                 }
@@ -1359,9 +1573,9 @@ final class ClientHandshaker extends Handshaker {
         // Try to resume an existing session.  This might be mandatory,
         // given certain API options.
         //
-        session = ((SSLSessionContextImpl)sslContext
-                        .engineGetClientSessionContext())
-                        .get(getHostSE(), getPortSE());
+        // ALPN_CHANGES_BEGIN
+        session = findResumableSession();
+        // ALPN_CHANGES_END
         if (debug != null && Debug.isOn("session")) {
             if (session != null) {
                 System.out.println("%% Client cached "
@@ -1611,7 +1825,7 @@ final class ClientHandshaker extends Handshaker {
             Object ssl = conn != null ? conn : engine;
             if (provider != null)
             {
-                List<String> protocols = provider.protocols();
+                List<String> protocols = alpnProtocols();
                 if (protocols != null && !protocols.isEmpty())
                 {
                     if (ALPN.debug)
@@ -1630,6 +1844,33 @@ final class ClientHandshaker extends Handshaker {
                     System.err.println("[C] ALPN client provider not present for " + ssl);
             }
         }
+
+        CachedInformation info = CachedInformation.get(sslContext.engineGetClientSessionContext());
+        cachedServerChain = info == null ? null : info.getServerChain(getHostSE(), getPortSE());
+        cachedServerChainReplaced = false;
+        if (cachedServerChain != null)
+            clientHelloMessage.extensions.add(new CachedInfoExtension(cachedServerChain.hash));
+
+        RawPublicKeys rawPublicKeys = RawPublicKeys.get(sslContext.engineGetClientSessionContext());
+        serverRawPublicKeyOffered = rawPublicKeys != null && rawPublicKeys.getVerifier() != null;
+        serverRawPublicKey = false;
+        if (serverRawPublicKeyOffered)
+            clientHelloMessage.extensions.add(new ServerCertificateTypeExtension(new int[]{
+                    ServerCertificateTypeExtension.TYPE_RAW_PUBLIC_KEY, ServerCertificateTypeExtension.TYPE_X509}));
+
+        sessionTicketOffered = SessionTickets.isClientInstalled(sslContext.engineGetClientSessionContext());
+        sessionTicketExpected = false;
+        if (sessionTicketOffered)
+        {
+            byte[] ticket = session == null ? null : SessionTickets.getTicket(session);
+            clientHelloMessage.extensions.add(ticket == null ? new SessionTicketExtension() : new SessionTicketExtension(ticket));
+        }
+
+        certificateStatusOffered = RevocationCache.get(sslContext.engineGetClientSessionContext()) != null;
+        certificateStatusExpected = false;
+        certificateStatusChain = null;
+        if (certificateStatusOffered)
+            clientHelloMessage.extensions.add(new CertStatusRequestExtension(CertStatusRequestExtension.STATUS_TYPE_OCSP));
         // ALPN_CHANGES_END
 
         return clientHelloMessage;
@@ -1697,6 +1938,18 @@ final class ClientHandshaker extends Handshaker {
                 keyExchangeString = keyExchange.name;
             }
 
+            // ALPN_CHANGES_BEGIN
+            TrustedChainCache chainCache = TrustedChainCache.get(sslContext.engineGetClientSessionContext());
+            TrustedChainCache.Key chainKey = chainCache == null ? null : TrustedChainCache.newKey(peerCerts,
+                    keyExchangeString, getEndpointIdentificationAlgorithmSE(), getHostSE());
+            boolean chainTrusted = chainKey != null && chainCache.isTrusted(chainKey);
+            if (chainTrusted)
+            {
+                if (ALPN.debug)
+                    System.err.println("[C] Cached trusted server certificate " + peerCerts[0].getSubjectX500Principal());
+            }
+            else
+            // ALPN_CHANGES_END
             if (tm instanceof X509ExtendedTrustManager) {
                 if (conn != null) {
                     ((X509ExtendedTrustManager)tm).checkServerTrusted(
@@ -1715,13 +1968,61 @@ final class ClientHandshaker extends Handshaker {
                 throw new CertificateException(
                     "Improper X509TrustManager implementation");
             }
+            // ALPN_CHANGES_BEGIN
+            if (chainKey != null && !chainTrusted)
+                chainCache.trusted(chainKey, peerCerts);
+            // ALPN_CHANGES_END
         } catch (CertificateException e) {
             // This will throw an exception, so include the original error.
             fatalSE(Alerts.alert_certificate_unknown, e);
         }
+        // ALPN_CHANGES_BEGIN
+        // The stapled response, if any, follows the Certificate message.
+        if (certificateStatusExpected)
+            certificateStatusChain = peerCerts;
+        else
+            checkRevocation(peerCerts);
+        storeServerChain(peerCerts);
+        // ALPN_CHANGES_END
         session.setPeerCertificates(peerCerts);
     }
 
+    // ALPN_CHANGES_BEGIN
+    private void storeServerChain(X509Certificate[] peerCerts) throws IOException
+    {
+        if (cachedServerChainReplaced)
+            return;
+        CachedInformation info = CachedInformation.get(sslContext.engineGetClientSessionContext());
+        if (info != null)
+            info.putServerChain(getHostSE(), getPortSE(), peerCerts, CachedInformation.hashAlgorithm(protocolVersion, cipherSuite));
+    }
+
+    private void checkRevocation(X509Certificate[] peerCerts) throws IOException
+    {
+        RevocationCache cache = RevocationCache.get(sslContext.engineGetClientSessionContext());
+        if (cache == null || peerCerts.length == 0)
+            return;
+        X509Certificate issuer = findIssuer(peerCerts);
+        if (issuer == null)
+        {
+            if (ALPN.debug)
+                System.err.println("[C] Revocation status not checked, issuer not found for " + peerCerts[0].getSubjectX500Principal());
+            return;
+        }
+        if (cache.check(peerCerts[0], issuer) == RevocationCache.Status.REVOKED)
+            fatalSE(Alerts.alert_certificate_revoked, "Server certificate revoked: " + peerCerts[0].getSubjectX500Principal());
+    }
+
+    private X509Certificate findIssuer(X509Certificate[] peerCerts)
+    {
+        // Servers may send their chain out of order, or without the issuer when it is a trust anchor.
+        X509Certificate issuer = RevocationCache.findIssuer(peerCerts[0], peerCerts);
+        if (issuer == null)
+            issuer = RevocationCache.findIssuer(peerCerts[0], sslContext.getX509TrustManager().getAcceptedIssuers());
+        return issuer;
+    }
+    // ALPN_CHANGES_END
+
     /*
      * Whether the certificates can represent the same identity?
      *
@@ -1735,54 +2036,28 @@ final class ClientHandshaker extends Handshaker {
      */
     private static boolean isIdentityEquivalent(X509Certificate thisCert,
             X509Certificate prevCert) {
-        if (thisCert.equals(prevCert)) {
+        // ALPN_CHANGES_BEGIN
+        // Certificate.hashCode() is computed once per certificate,
+        // so compare it before comparing the encoded forms.
+        if (thisCert == prevCert || (thisCert.hashCode() == prevCert.hashCode() && thisCert.equals(prevCert)))
             return true;
-        }
-
-        // check subject alternative names
-        Collection<List<?>> thisSubjectAltNames = null;
-        try {
-            thisSubjectAltNames = thisCert.getSubjectAlternativeNames();
-        } catch (CertificateParsingException cpe) {
-            if (debug != null && Debug.isOn("handshake")) {
-                System.out.println(
-                        "Attempt to obtain subjectAltNames extension failed!");
-            }
-        }
 
-        Collection<List<?>> prevSubjectAltNames = null;
-        try {
-            prevSubjectAltNames = prevCert.getSubjectAlternativeNames();
-        } catch (CertificateParsingException cpe) {
-            if (debug != null && Debug.isOn("handshake")) {
-                System.out.println(
-                        "Attempt to obtain subjectAltNames extension failed!");
-            }
-        }
-
-        if ((thisSubjectAltNames != null) && (prevSubjectAltNames != null)) {
+        // check subject alternative names, parsed once per certificate
+        SubjectAltNames thisSubjectAltNames = SubjectAltNames.of(thisCert);
+        SubjectAltNames prevSubjectAltNames = SubjectAltNames.of(prevCert);
+        if (thisSubjectAltNames.present && prevSubjectAltNames.present)
+        {
             // check the iPAddress field in subjectAltName extension
-            Collection<String> thisSubAltIPAddrs =
-                        getSubjectAltNames(thisSubjectAltNames, ALTNAME_IP);
-            Collection<String> prevSubAltIPAddrs =
-                        getSubjectAltNames(prevSubjectAltNames, ALTNAME_IP);
-            if ((thisSubAltIPAddrs != null) && (prevSubAltIPAddrs != null) &&
-                (isEquivalent(thisSubAltIPAddrs, prevSubAltIPAddrs))) {
-
+            if (thisSubjectAltNames.ipAddresses != null && prevSubjectAltNames.ipAddresses != null &&
+                    isEquivalent(thisSubjectAltNames.ipAddresses, prevSubjectAltNames.ipAddresses))
                 return true;
-            }
 
             // check the dNSName field in subjectAltName extension
-            Collection<String> thisSubAltDnsNames =
-                        getSubjectAltNames(thisSubjectAltNames, ALTNAME_DNS);
-            Collection<String> prevSubAltDnsNames =
-                        getSubjectAltNames(prevSubjectAltNames, ALTNAME_DNS);
-            if ((thisSubAltDnsNames != null) && (prevSubAltDnsNames != null) &&
-                (isEquivalent(thisSubAltDnsNames, prevSubAltDnsNames))) {
-
+            if (thisSubjectAltNames.dnsNames != null && prevSubjectAltNames.dnsNames != null &&
+                    isEquivalent(thisSubjectAltNames.dnsNames, prevSubjectAltNames.dnsNames))
                 return true;
-            }
         }
+        // ALPN_CHANGES_END
 
         // check the certificate subject and issuer
         X500Principal thisSubject = thisCert.getSubjectX500Principal();
@@ -1799,6 +2074,51 @@ final class ClientHandshaker extends Handshaker {
         return false;
     }
 
+    // ALPN_CHANGES_BEGIN
+    /**
+     * <p>The IP address and DNS subject alternative names of a certificate,
+     * memoized so that renegotiations do not decode the certificate
+     * extensions again.</p>
+     */
+    private static final class SubjectAltNames
+    {
+        private static final Cache<X509Certificate, SubjectAltNames> cache = Cache.newSoftMemoryCache(256);
+        private static final SubjectAltNames NONE = new SubjectAltNames(null);
+
+        private final boolean present;
+        private final Collection<String> ipAddresses;
+        private final Collection<String> dnsNames;
+
+        private SubjectAltNames(Collection<List<?>> subjectAltNames)
+        {
+            this.present = subjectAltNames != null;
+            this.ipAddresses = present ? getSubjectAltNames(subjectAltNames, ALTNAME_IP) : null;
+            this.dnsNames = present ? getSubjectAltNames(subjectAltNames, ALTNAME_DNS) : null;
+        }
+
+        private static SubjectAltNames of(X509Certificate cert)
+        {
+            SubjectAltNames result = cache.get(cert);
+            if (result == null)
+            {
+                try
+                {
+                    Collection<List<?>> subjectAltNames = cert.getSubjectAlternativeNames();
+                    result = subjectAltNames == null ? NONE : new SubjectAltNames(subjectAltNames);
+                }
+                catch (CertificateParsingException cpe)
+                {
+                    if (debug != null && Debug.isOn("handshake"))
+                        System.out.println("Attempt to obtain subjectAltNames extension failed!");
+                    result = NONE;
+                }
+                cache.put(cert, result);
+            }
+            return result;
+        }
+    }
+    // ALPN_CHANGES_END
+
     /*
      * Returns the subject alternative name of the specified type in the
      * subjectAltNames extension of a certificate.
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.net.ssl.StandardConstants;
+
+/**
+ * <p>Peeks the ClientHello in the first TLS record of a buffer, before an
+ * {@code SSLEngine} is created, so that a connection can be routed on its
+ * server name and application protocols.</p>
+ * <p>The parser never modifies the position or the limit of the buffer.
+ * When the ClientHello is contained in the first TLS record, as it is for
+ * most clients, the parser allocates nothing: it only records offsets into
+ * the buffer, and the accessors decode the fields on demand.
+ * When the ClientHello is fragmented across several TLS records, the
+ * fragments are copied into an internal buffer, reused by the following
+ * parses, up to the length of the handshake message.</p>
+ * <p>The ALPN protocol names are validated with the same code used by
+ * {@link ALPNExtension} during the handshake.</p>
+ * <p>A parser instance can be reused for many connections, but it is not
+ * thread-safe, and the buffer must not be modified while the accessors are
+ * used.</p>
+ * <pre>
+ * ClientHelloParser parser = new ClientHelloParser();
+ * if (parser.parse(buffer) == ClientHelloParser.Result.CLIENT_HELLO)
+ *     route(parser.getServerName(), parser.offersApplicationProtocol("h2"));
+ * </pre>
+ */
+public final class ClientHelloParser
+{
+    public enum Result
+    {
+        /**
+         * A ClientHello has been parsed.
+         */
+        CLIENT_HELLO,
+        /**
+         * More bytes are needed to parse the TLS records containing the ClientHello.
+         */
+        UNDERFLOW,
+        /**
+         * The bytes are not a ClientHello.
+         */
+        UNSUPPORTED
+    }
+
+    private static final int RECORD_HEADER_LENGTH = 5;
+    private static final int MAX_RECORD_LENGTH = 16384 + 2048;
+    // Bounds the memory retained for fragmented ClientHellos.
+    private static final int MAX_FRAGMENTED_LENGTH = 65536;
+
+    private byte[] fragments = new byte[0];
+    private ByteBuffer fragmentsBuffer = ByteBuffer.wrap(fragments);
+    private ByteBuffer buffer;
+    private int protocolVersion;
+    private int cipherSuitesOffset;
+    private int cipherSuitesCount;
+    private int serverNameOffset;
+    private int serverNameLength;
+    private int protocolsOffset;
+    private int protocolsLength;
+    private int protocolsCount;
+
+    /**
+     * <p>Parses the ClientHello; unless the result is {@link Result#CLIENT_HELLO},
+     * the accessors return the values of an empty ClientHello, not the
+     * fields parsed before the error.</p>
+     *
+     * @param buffer the buffer containing the first bytes read from the connection
+     * @return the result of the parsing
+     */
+    public Result parse(ByteBuffer buffer)
+    {
+        reset();
+        Result result = parseRecords(buffer);
+        if (result != Result.CLIENT_HELLO)
+            reset();
+        return result;
+    }
+
+    private Result parseRecords(ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        if (limit - start < RECORD_HEADER_LENGTH)
+            return Result.UNDERFLOW;
+        if (buffer.get(start) != Record.ct_handshake)
+            return Result.UNSUPPORTED;
+        int recordLength = getInt16(buffer, start + 3);
+        if (recordLength == 0 || recordLength > MAX_RECORD_LENGTH)
+            return Result.UNSUPPORTED;
+        int recordEnd = start + RECORD_HEADER_LENGTH + recordLength;
+        if (limit < recordEnd)
+            return Result.UNDERFLOW;
+
+        int offset = start + RECORD_HEADER_LENGTH;
+        if (buffer.get(offset) != HandshakeMessage.ht_client_hello)
+            return Result.UNSUPPORTED;
+        if (recordEnd - offset >= 4)
+        {
+            int messageEnd = offset + 4 + getInt24(buffer, offset + 1);
+            if (messageEnd <= recordEnd)
+                return parseClientHello(buffer, offset, messageEnd);
+        }
+        return parseFragments(buffer, start, limit);
+    }
+
+    private Result parseFragments(ByteBuffer buffer, int offset, int limit)
+    {
+        int length = 0;
+        int messageLength = -1;
+        while (messageLength < 0 || length < messageLength)
+        {
+            if (limit - offset < RECORD_HEADER_LENGTH)
+                return Result.UNDERFLOW;
+            if (buffer.get(offset) != Record.ct_handshake)
+                return Result.UNSUPPORTED;
+            int recordLength = getInt16(buffer, offset + 3);
+            if (recordLength == 0 || recordLength > MAX_RECORD_LENGTH)
+                return Result.UNSUPPORTED;
+            offset += RECORD_HEADER_LENGTH;
+            if (limit - offset < recordLength)
+                return Result.UNDERFLOW;
+            // Only copy the bytes that belong to the ClientHello.
+            int copy = recordLength;
+            if (messageLength >= 0)
+                copy = Math.min(copy, messageLength - length);
+            ensureFragmentsCapacity(length + copy);
+            ByteBuffer record = buffer.duplicate();
+            record.position(offset);
+            record.get(fragments, length, copy);
+            length += copy;
+            offset += recordLength;
+            if (messageLength < 0 && length >= 4)
+            {
+                messageLength = 4 + getInt24(fragmentsBuffer, 1);
+                if (messageLength > MAX_FRAGMENTED_LENGTH)
+                    return Result.UNSUPPORTED;
+            }
+        }
+        return parseClientHello(fragmentsBuffer, 0, messageLength);
+    }
+
+    private void ensureFragmentsCapacity(int capacity)
+    {
+        if (fragments.length < capacity)
+        {
+            fragments = Arrays.copyOf(fragments, Math.max(capacity, Math.min(2 * fragments.length, MAX_FRAGMENTED_LENGTH)));
+            fragmentsBuffer = ByteBuffer.wrap(fragments);
+        }
+    }
+
+    private Result parseClientHello(ByteBuffer buffer, int offset, int messageEnd)
+    {
+        offset += 4;
+
+        // client_version and random.
+        if (messageEnd - offset < 2 + 32)
+            return Result.UNSUPPORTED;
+        int version = getInt16(buffer, offset);
+        offset += 2 + 32;
+
+        // session_id.
+        offset = skipVector8(buffer, offset, messageEnd);
+        if (offset < 0)
+            return Result.UNSUPPORTED;
+
+        // cipher_suites.
+        if (messageEnd - offset < 2)
+            return Result.UNSUPPORTED;
+        int cipherSuitesLength = getInt16(buffer, offset);
+        if ((cipherSuitesLength & 1) != 0 || messageEnd - offset - 2 < cipherSuitesLength)
+            return Result.UNSUPPORTED;
+        int suitesOffset = offset + 2;
+        offset = suitesOffset + cipherSuitesLength;
+
+        // compression_methods.
+        offset = skipVector8(buffer, offset, messageEnd);
+        if (offset < 0)
+            return Result.UNSUPPORTED;
+
+        // extensions, optional.
+        if (offset < messageEnd)
+        {
+            if (messageEnd - offset < 2)
+                return Result.UNSUPPORTED;
+            int extensionsEnd = offset + 2 + getInt16(buffer, offset);
+            if (extensionsEnd != messageEnd)
+                return Result.UNSUPPORTED;
+            offset += 2;
+            while (offset < extensionsEnd)
+            {
+                if (extensionsEnd - offset < 4)
+                    return Result.UNSUPPORTED;
+                int type = getInt16(buffer, offset);
+                int length = getInt16(buffer, offset + 2);
+                offset += 4;
+                if (extensionsEnd - offset < length)
+                    return Result.UNSUPPORTED;
+                if (type == ExtensionType.EXT_SERVER_NAME.id)
+                {
+                    if (!parseServerName(buffer, offset, offset + length))
+                        return Result.UNSUPPORTED;
+                }
+                else if (type == ExtensionType.EXT_ALPN.id)
+                {
+                    if (!parseProtocols(buffer, offset, offset + length))
+                        return Result.UNSUPPORTED;
+                }
+                offset += length;
+            }
+        }
+
+        this.buffer = buffer;
+        this.protocolVersion = version;
+        this.cipherSuitesOffset = suitesOffset;
+        this.cipherSuitesCount = cipherSuitesLength / 2;
+        return Result.CLIENT_HELLO;
+    }
+
+    private boolean parseServerName(ByteBuffer buffer, int offset, int end)
+    {
+        if (end - offset < 2 || offset + 2 + getInt16(buffer, offset) != end)
+            return false;
+        offset += 2;
+        while (offset < end)
+        {
+            if (end - offset < 3)
+                return false;
+            int type = buffer.get(offset) & 0xFF;
+            int length = getInt16(buffer, offset + 1);
+            offset += 3;
+            if (end - offset < length)
+                return false;
+            if (type == StandardConstants.SNI_HOST_NAME && serverNameLength == 0)
+            {
+                serverNameOffset = offset;
+                serverNameLength = length;
+            }
+            offset += length;
+        }
+        return true;
+    }
+
+    private boolean parseProtocols(ByteBuffer buffer, int offset, int end)
+    {
+        if (end - offset < 2 || offset + 2 + getInt16(buffer, offset) != end)
+            return false;
+        offset += 2;
+        int count = ALPNExtension.countProtocols(buffer, offset, end);
+        if (count < 0)
+            return false;
+        protocolsOffset = offset;
+        protocolsLength = end - offset;
+        protocolsCount = count;
+        return true;
+    }
+
+    private void reset()
+    {
+        buffer = null;
+        protocolVersion = 0;
+        cipherSuitesOffset = 0;
+        cipherSuitesCount = 0;
+        serverNameOffset = 0;
+        serverNameLength = 0;
+        protocolsOffset = 0;
+        protocolsLength = 0;
+        protocolsCount = 0;
+    }
+
+    /**
+     * @return the TLS protocol version requested by the client, for example 0x0303 for TLS 1.2
+     */
+    public int getProtocolVersion()
+    {
+        return protocolVersion;
+    }
+
+    /**
+     * @return the name of the TLS protocol version requested by the client, for example "TLSv1.2"
+     */
+    public String getProtocolVersionName()
+    {
+        return ProtocolVersion.valueOf(protocolVersion >>> 8, protocolVersion & 0xFF).name;
+    }
+
+    /**
+     * @return the number of cipher suites offered by the client
+     */
+    public int getCipherSuiteCount()
+    {
+        return cipherSuitesCount;
+    }
+
+    /**
+     * @param index the index of the cipher suite, in the client's order of preference
+     * @return the IANA identifier of the cipher suite
+     */
+    public int getCipherSuite(int index)
+    {
+        if (index < 0 || index >= cipherSuitesCount)
+            throw new IndexOutOfBoundsException("Cipher suite index " + index);
+        return getInt16(buffer, cipherSuitesOffset + 2 * index);
+    }
+
+    /**
+     * @param index the index of the cipher suite, in the client's order of preference
+     * @return the name of the cipher suite
+     */
+    public String getCipherSuiteName(int index)
+    {
+        int id = getCipherSuite(index);
+        return CipherSuite.valueOf(id >>> 8, id & 0xFF).name;
+    }
+
+    /**
+     * @return whether the client indicated a host name
+     */
+    public boolean hasServerName()
+    {
+        return serverNameLength > 0;
+    }
+
+    /**
+     * @return the host name indicated by the client, or null if the client did not indicate a host name
+     */
+    public String getServerName()
+    {
+        if (serverNameLength == 0)
+            return null;
+        return decode(serverNameOffset, serverNameLength);
+    }
+
+    /**
+     * @return the number of application protocols offered by the client
+     */
+    public int getApplicationProtocolCount()
+    {
+        return protocolsCount;
+    }
+
+    /**
+     * @param index the index of the application protocol, in the client's order of preference
+     * @return the application protocol
+     */
+    public String getApplicationProtocol(int index)
+    {
+        if (index < 0 || index >= protocolsCount)
+            throw new IndexOutOfBoundsException("Application protocol index " + index);
+        int offset = protocolsOffset;
+        for (int i = 0; i < index; ++i)
+            offset += 1 + (buffer.get(offset) & 0xFF);
+        return decode(offset + 1, buffer.get(offset) & 0xFF);
+    }
+
+    /**
+     * <p>Tests whether the client offered the given application protocol,
+     * without allocating.</p>
+     *
+     * @param protocol the application protocol, made of ASCII characters
+     * @return whether the client offered the application protocol
+     */
+    public boolean offersApplicationProtocol(String protocol)
+    {
+        int offset = protocolsOffset;
+        int end = protocolsOffset + protocolsLength;
+        while (offset < end)
+        {
+            int length = buffer.get(offset) & 0xFF;
+            if (length == protocol.length() && matches(offset + 1, protocol))
+                return true;
+            offset += 1 + length;
+        }
+        return false;
+    }
+
+    private boolean matches(int offset, String value)
+    {
+        for (int i = 0; i < value.length(); ++i)
+        {
+            if ((buffer.get(offset + i) & 0xFF) != value.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private String decode(int offset, int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i)
+            bytes[i] = buffer.get(offset + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int skipVector8(ByteBuffer buffer, int offset, int end)
+    {
+        if (end - offset < 1)
+            return -1;
+        int length = buffer.get(offset) & 0xFF;
+        if (end - offset - 1 < length)
+            return -1;
+        return offset + 1 + length;
+    }
+
+    private static int getInt16(ByteBuffer buffer, int offset)
+    {
+        return ((buffer.get(offset) & 0xFF) << 8) | (buffer.get(offset + 1) & 0xFF);
+    }
+
+    private static int getInt24(ByteBuffer buffer, int offset)
+    {
+        return ((buffer.get(offset) & 0xFF) << 16) | getInt16(buffer, offset + 1);
+    }
+}
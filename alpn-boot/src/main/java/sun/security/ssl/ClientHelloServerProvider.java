@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.util.List;
+
+import javax.net.ssl.SSLException;
+
+import org.eclipse.jetty.alpn.ALPN;
+
+/**
+ * <p>A {@link ALPN.ServerProvider} that selects the application protocol
+ * looking at the whole ClientHello, for example to route on the server name,
+ * the TLS version or the cipher suites offered by the client.</p>
+ * <p>The {@link ClientHelloView} is built from the ClientHello already parsed
+ * by the server handshaker, so that the ClientHello bytes are parsed once.</p>
+ * <p>The cipher suite chosen for the connection is available from
+ * {@link ClientHelloView#getCipherSuite()}, in particular when this provider
+ * is also a {@link CipherSuiteServerProvider}.</p>
+ */
+public interface ClientHelloServerProvider extends ALPN.ServerProvider
+{
+    /**
+     * @param clientHello the ClientHello sent by the client
+     * @param protocols the protocols offered by the client; when this provider is
+     * also a {@link CipherSuiteServerProvider}, only the protocols permitted for
+     * the chosen cipher suite
+     * @return the selected protocol, or null to not send the ALPN extension
+     * @throws SSLException if the application protocol cannot be negotiated
+     */
+    String select(ClientHelloView clientHello, List<String> protocols) throws SSLException;
+
+    /**
+     * <p>Called when the client does not offer application protocols.</p>
+     *
+     * @param clientHello the ClientHello sent by the client
+     */
+    default void unsupported(ClientHelloView clientHello)
+    {
+        unsupported();
+    }
+}
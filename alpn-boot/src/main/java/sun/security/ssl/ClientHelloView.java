@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+
+/**
+ * <p>A read-only view of the ClientHello received by the server.</p>
+ * <p>The view is built from the ClientHello already parsed by the server
+ * handshaker, so no bytes are parsed again; each property is materialized
+ * only the first time it is accessed.</p>
+ * <p>The view must only be used during the callback it is passed to.</p>
+ */
+public final class ClientHelloView
+{
+    private final HandshakeMessage.ClientHello clientHello;
+    private final CipherSuite cipherSuite;
+    private String protocolVersion;
+    private List<String> cipherSuites;
+    private List<SNIServerName> serverNames;
+    private List<Integer> namedGroups;
+    private List<String> applicationProtocols;
+
+    ClientHelloView(HandshakeMessage.ClientHello clientHello, CipherSuite cipherSuite)
+    {
+        this.clientHello = clientHello;
+        this.cipherSuite = cipherSuite;
+    }
+
+    /**
+     * @return the TLS protocol version requested by the client, for example "TLSv1.2"
+     */
+    public String getProtocolVersion()
+    {
+        if (protocolVersion == null)
+            protocolVersion = clientHello.protocolVersion.name;
+        return protocolVersion;
+    }
+
+    /**
+     * @return the cipher suite names offered by the client, in the client's order of preference
+     */
+    public List<String> getCipherSuites()
+    {
+        if (cipherSuites == null)
+        {
+            Collection<CipherSuite> suites = clientHello.getCipherSuites().collection();
+            List<String> names = new ArrayList<>(suites.size());
+            for (CipherSuite suite : suites)
+                names.add(suite.name);
+            cipherSuites = Collections.unmodifiableList(names);
+        }
+        return cipherSuites;
+    }
+
+    /**
+     * @return the name of the cipher suite chosen by the server among the offered ones
+     */
+    public String getCipherSuite()
+    {
+        return cipherSuite.name;
+    }
+
+    /**
+     * @return the server names indicated by the client, possibly empty
+     */
+    public List<SNIServerName> getServerNames()
+    {
+        if (serverNames == null)
+        {
+            ServerNameExtension extension = (ServerNameExtension)clientHello.extensions.get(ExtensionType.EXT_SERVER_NAME);
+            serverNames = extension == null ? Collections.<SNIServerName>emptyList() : extension.getServerNames();
+        }
+        return serverNames;
+    }
+
+    /**
+     * @return the host name indicated by the client, or null if the client did not indicate a host name
+     */
+    public String getHostName()
+    {
+        for (SNIServerName serverName : getServerNames())
+        {
+            if (serverName instanceof SNIHostName)
+                return ((SNIHostName)serverName).getAsciiName();
+        }
+        return null;
+    }
+
+    /**
+     * @return the IANA identifiers of the named groups (elliptic curves and
+     * finite field groups) offered by the client, in the client's preference order
+     */
+    public List<Integer> getSupportedGroups()
+    {
+        if (namedGroups == null)
+        {
+            EllipticCurvesExtension extension = (EllipticCurvesExtension)clientHello.extensions.get(ExtensionType.EXT_ELLIPTIC_CURVES);
+            if (extension == null)
+            {
+                namedGroups = Collections.emptyList();
+            }
+            else
+            {
+                int[] curveIds = extension.curveIds();
+                List<Integer> groups = new ArrayList<>(curveIds.length);
+                for (int group : curveIds)
+                    groups.add(group);
+                namedGroups = Collections.unmodifiableList(groups);
+            }
+        }
+        return namedGroups;
+    }
+
+    /**
+     * @return the application protocols offered by the client, possibly empty
+     */
+    public List<String> getApplicationProtocols()
+    {
+        if (applicationProtocols == null)
+        {
+            ALPNExtension extension = (ALPNExtension)clientHello.extensions.get(ExtensionType.EXT_ALPN);
+            applicationProtocols = extension == null ? Collections.<String>emptyList() : Collections.unmodifiableList(extension.getProtocols());
+        }
+        return applicationProtocols;
+    }
+
+    /**
+     * @return whether the client asked to resume a session
+     */
+    public boolean isResumptionRequested()
+    {
+        return clientHello.sessionId.length() != 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,%s,sni=%s,alpn=%s]", getClass().getSimpleName(), hashCode(),
+                getProtocolVersion(), getCipherSuite(), getServerNames(), getApplicationProtocols());
+    }
+}
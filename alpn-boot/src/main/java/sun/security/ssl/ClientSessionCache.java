@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * <p>A client session cache that keeps several sessions per server, keyed
+ * by host, port and the application protocols offered via ALPN, to replace
+ * the JDK client session cache that keeps one session per host and port.</p>
+ * <p>A client that connects to the same server with different ALPN offers,
+ * for example a pool of HTTP/2 connections and a pool of HTTP/1.1
+ * connections, resumes the session established with the same offer, or
+ * else a session whose negotiated protocol is offered again; sessions
+ * negotiated for a protocol that is not offered are never resumed.</p>
+ * <p>At most {@code sessionsPerEndpoint} sessions are kept per host and
+ * port, the oldest being evicted first, and at most {@code maxEndpoints} hosts
+ * and ports are kept, the least recently used being evicted first.</p>
+ * <pre>
+ * ClientSessionCache cache = new ClientSessionCache(1024, 4, 86400);
+ * ClientSessionCache.install(sslContext.getClientSessionContext(), cache);
+ * </pre>
+ * <p>After {@link #uninstall(SSLSessionContext)}, the client handshakes of
+ * the context go back to the JDK client session cache; the sessions of this
+ * cache, which hold master secrets, are released then, or once the
+ * {@code SSLContext} is garbage collected.</p>
+ */
+public final class ClientSessionCache
+{
+    private static final WeakIdentityMap<SSLSessionContext, ClientSessionCache> caches = new WeakIdentityMap<>();
+
+    private final Map<Endpoint, List<Entry>> endpoints;
+    private final int sessionsPerEndpoint;
+    private final long timeout;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxEndpoints the maximum number of hosts and ports
+     * @param sessionsPerEndpoint the maximum number of sessions per host and port
+     * @param timeout the session timeout in seconds, or 0 for no timeout
+     */
+    public ClientSessionCache(final int maxEndpoints, int sessionsPerEndpoint, int timeout)
+    {
+        if (maxEndpoints <= 0)
+            throw new IllegalArgumentException("Invalid endpoint count " + maxEndpoints);
+        if (sessionsPerEndpoint <= 0)
+            throw new IllegalArgumentException("Invalid session count " + sessionsPerEndpoint);
+        if (timeout < 0)
+            throw new IllegalArgumentException("Invalid timeout " + timeout);
+        this.endpoints = new LinkedHashMap<Endpoint, List<Entry>>(16, 0.75F, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Endpoint, List<Entry>> eldest)
+            {
+                return size() > maxEndpoints;
+            }
+        };
+        this.sessionsPerEndpoint = sessionsPerEndpoint;
+        this.timeout = timeout * 1000L;
+    }
+
+    /**
+     * <p>Installs a cache on a client session context.</p>
+     *
+     * @param context the client session context of a {@code SSLContext}
+     * @param cache the cache for the client sessions of the context
+     */
+    public static void install(SSLSessionContext context, ClientSessionCache cache)
+    {
+        caches.put(context, cache);
+    }
+
+    /**
+     * @param context the client session context of a {@code SSLContext}
+     * @return the cache installed on the context, or null if no cache is installed
+     */
+    public static ClientSessionCache get(SSLSessionContext context)
+    {
+        return caches.get(context);
+    }
+
+    /**
+     * <p>Removes the cache installed on a client session context.</p>
+     *
+     * @param context the client session context of a {@code SSLContext}
+     * @return the cache that was installed on the context, or null if no cache was installed
+     */
+    public static ClientSessionCache uninstall(SSLSessionContext context)
+    {
+        return caches.remove(context);
+    }
+
+    /**
+     * @return the session to resume with the given ALPN offer, or null
+     */
+    SSLSessionImpl get(String host, int port, List<String> protocols)
+    {
+        SSLSessionImpl result = host == null ? null : find(new Endpoint(host, port), normalize(protocols));
+        if (result == null)
+            misses.increment();
+        else
+            hits.increment();
+        return result;
+    }
+
+    private synchronized SSLSessionImpl find(Endpoint endpoint, List<String> protocols)
+    {
+        List<Entry> entries = endpoints.get(endpoint);
+        if (entries == null)
+            return null;
+        long now = System.currentTimeMillis();
+        Entry best = null;
+        for (Iterator<Entry> iterator = entries.iterator(); iterator.hasNext();)
+        {
+            Entry entry = iterator.next();
+            if (isExpired(entry, now) || !entry.session.isRejoinable())
+            {
+                iterator.remove();
+                continue;
+            }
+            // Same offer: the same protocol is likely to be negotiated again.
+            if (entry.protocols.equals(protocols))
+            {
+                best = entry;
+                break;
+            }
+            // Different offer: only if the negotiated protocol is offered again.
+            if (best == null && offers(protocols, entry.applicationProtocol))
+                best = entry;
+        }
+        if (entries.isEmpty())
+            endpoints.remove(endpoint);
+        return best == null ? null : best.session;
+    }
+
+    private static boolean offers(List<String> protocols, String protocol)
+    {
+        return protocol == null ? protocols.isEmpty() : protocols.contains(protocol);
+    }
+
+    void put(SSLSessionImpl session, List<String> protocols, String applicationProtocol)
+    {
+        String host = session.getPeerHost();
+        if (host == null)
+            return;
+        Endpoint endpoint = new Endpoint(host, session.getPeerPort());
+        Entry entry = new Entry(session, normalize(protocols), applicationProtocol, System.currentTimeMillis());
+        synchronized (this)
+        {
+            List<Entry> entries = endpoints.get(endpoint);
+            if (entries == null)
+            {
+                entries = new ArrayList<>(sessionsPerEndpoint);
+                endpoints.put(endpoint, entries);
+            }
+            // Keep one session per offer, the most recent.
+            for (Iterator<Entry> iterator = entries.iterator(); iterator.hasNext();)
+            {
+                if (iterator.next().protocols.equals(entry.protocols))
+                    iterator.remove();
+            }
+            if (entries.size() == sessionsPerEndpoint)
+                entries.remove(0);
+            entries.add(entry);
+        }
+    }
+
+    private static List<String> normalize(List<String> protocols)
+    {
+        return protocols == null ? Collections.<String>emptyList() : new ArrayList<>(protocols);
+    }
+
+    private boolean isExpired(Entry entry, long now)
+    {
+        return timeout > 0 && now - entry.creationTime > timeout;
+    }
+
+    /**
+     * <p>Removes all the sessions.</p>
+     */
+    public synchronized void clear()
+    {
+        endpoints.clear();
+    }
+
+    /**
+     * @return the number of sessions in the cache
+     */
+    public synchronized int getSize()
+    {
+        int size = 0;
+        for (List<Entry> entries : endpoints.values())
+            size += entries.size();
+        return size;
+    }
+
+    /**
+     * @return the number of lookups that found a resumable session
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find a resumable session
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[sessions=%d,hits=%d,misses=%d]", getClass().getSimpleName(), hashCode(), getSize(), getHits(), getMisses());
+    }
+
+    private static class Endpoint
+    {
+        private final String host;
+        private final int port;
+
+        private Endpoint(String host, int port)
+        {
+            this.host = host.toLowerCase(Locale.ENGLISH);
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Endpoint))
+                return false;
+            Endpoint that = (Endpoint)obj;
+            return port == that.port && host.equals(that.host);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(host, port);
+        }
+    }
+
+    private static class Entry
+    {
+        private final SSLSessionImpl session;
+        private final List<String> protocols;
+        private final String applicationProtocol;
+        private final long creationTime;
+
+        private Entry(SSLSessionImpl session, List<String> protocols, String applicationProtocol, long creationTime)
+        {
+            this.session = session;
+            this.protocols = protocols;
+            this.applicationProtocol = applicationProtocol;
+            this.creationTime = creationTime;
+        }
+    }
+}
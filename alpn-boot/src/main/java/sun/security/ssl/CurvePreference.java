@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.security.AlgorithmConstraints;
+import java.security.AlgorithmParameters;
+import java.security.CryptoPrimitive;
+import java.security.GeneralSecurityException;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSessionContext;
+
+import sun.security.util.Cache;
+
+/**
+ * <p>Chooses the curve of the ephemeral ECDH keys of servers.</p>
+ * <p>By default, servers choose the first curve listed by the client that
+ * the algorithm constraints permit, as the JDK does.
+ * Once a preference is installed on the server session context of a
+ * {@code SSLContext}, its servers choose instead the first curve of the
+ * preference that the client lists, so that servers can prefer cheap
+ * curves even if clients list expensive curves first; the curves listed by
+ * the client that are not in the preference are only chosen if none of the
+ * preferred curves is.</p>
+ * <pre>
+ * CurvePreference preference = new CurvePreference(Arrays.asList("secp256r1", "secp384r1", "secp521r1"), 256);
+ * CurvePreference.install(sslContext.getServerSessionContext(), preference);
+ * </pre>
+ * <p>Checking the curves against the algorithm constraints for every
+ * handshake is avoided by caching the curve chosen for a list of curves,
+ * when the cache size is positive.
+ * Only the handshakes of connections that use the default algorithm
+ * constraints use the cache, since applications may set different
+ * algorithm constraints per connection.</p>
+ */
+public final class CurvePreference
+{
+    private static final Set<CryptoPrimitive> KEY_AGREEMENT = Collections.unmodifiableSet(EnumSet.of(CryptoPrimitive.KEY_AGREEMENT));
+    private static final String[] names = new String[29];
+    private static final WeakIdentityMap<SSLSessionContext, CurvePreference> preferences = new WeakIdentityMap<>();
+
+    static
+    {
+        // The named curves of RFC 4492 and RFC 7027 with a SunEC implementation.
+        names[19] = "secp192r1";
+        names[21] = "secp224r1";
+        names[22] = "secp256k1";
+        names[23] = "secp256r1";
+        names[24] = "secp384r1";
+        names[25] = "secp521r1";
+        names[26] = "brainpoolP256r1";
+        names[27] = "brainpoolP384r1";
+        names[28] = "brainpoolP512r1";
+    }
+
+    private final Curve[] preference;
+    private final Cache<Key, Integer> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param curveNames the curve names, by order of preference, or an empty list to follow the client order
+     * @param cacheSize the maximum number of lists of curves whose chosen curve is cached, or 0 for no cache
+     * @throws IllegalArgumentException if a curve is unknown
+     */
+    public CurvePreference(List<String> curveNames, int cacheSize)
+    {
+        if (cacheSize < 0)
+            throw new IllegalArgumentException("Invalid cache size " + cacheSize);
+        Curve[] curves = new Curve[curveNames.size()];
+        for (int i = 0; i < curves.length; ++i)
+            curves[i] = new Curve(curveNames.get(i).trim());
+        this.preference = curves;
+        this.cache = cacheSize == 0 ? null : Cache.<Key, Integer>newSoftMemoryCache(cacheSize);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @param preference the curve preference of the server handshakes of the context
+     */
+    public static void install(SSLSessionContext context, CurvePreference preference)
+    {
+        preferences.put(context, preference);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the preference installed on the context, or null if no preference is installed
+     */
+    public static CurvePreference get(SSLSessionContext context)
+    {
+        return preferences.get(context);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the preference that was installed on the context, or null if no preference was installed
+     */
+    public static CurvePreference uninstall(SSLSessionContext context)
+    {
+        return preferences.remove(context);
+    }
+
+    /**
+     * @return the curve names that servers prefer, or an empty list if servers follow the client order
+     */
+    public List<String> getPreference()
+    {
+        List<String> result = new ArrayList<>(preference.length);
+        for (Curve curve : preference)
+            result.add(names[curve.id]);
+        return result;
+    }
+
+    /**
+     * @return whether the curve chosen for a list of curves is cached
+     */
+    public boolean isCacheEnabled()
+    {
+        return cache != null;
+    }
+
+    /**
+     * @return the number of curves found in the cache
+     */
+    public long getHits()
+    {
+        return hits.longValue();
+    }
+
+    /**
+     * @return the number of curves not found in the cache
+     */
+    public long getMisses()
+    {
+        return misses.longValue();
+    }
+
+    /**
+     * <p>Removes all the entries of the cache.</p>
+     */
+    public void invalidate()
+    {
+        if (cache != null)
+            cache.clear();
+    }
+
+    /**
+     * @param cacheable whether the constraints are the default ones, so that the chosen curve may be cached
+     * @return the id of the curve for the ephemeral ECDH keys, or -1 if no curve can be used
+     */
+    int select(EllipticCurvesExtension requested, AlgorithmConstraints constraints, boolean cacheable)
+    {
+        if (cache == null || !cacheable)
+            return select(requested, constraints);
+        Key key = new Key(requested.curveIds());
+        Integer result = cache.get(key);
+        if (result != null)
+        {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        int curve = select(requested, constraints);
+        cache.put(key, curve);
+        return curve;
+    }
+
+    private int select(EllipticCurvesExtension requested, AlgorithmConstraints constraints)
+    {
+        for (Curve curve : preference)
+        {
+            if (requested.contains(curve.id) && EllipticCurvesExtension.isSupported(curve.id) &&
+                    constraints.permits(KEY_AGREEMENT, "EC", curve.parameters))
+                return curve.id;
+        }
+        return requested.getPreferredCurve(constraints);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,hits=%d,misses=%d]", getClass().getSimpleName(), hashCode(), getPreference(), getHits(), getMisses());
+    }
+
+    private static class Curve
+    {
+        private final int id;
+        private final AlgorithmParameters parameters;
+
+        private Curve(String name)
+        {
+            int id = -1;
+            for (int i = 0; i < names.length; ++i)
+            {
+                if (names[i] != null && names[i].toLowerCase(Locale.ENGLISH).equals(name.toLowerCase(Locale.ENGLISH)))
+                    id = i;
+            }
+            if (id < 0)
+                throw new IllegalArgumentException("Unknown curve " + name);
+            this.id = id;
+            try
+            {
+                parameters = AlgorithmParameters.getInstance("EC");
+                parameters.init(new ECGenParameterSpec(names[id]));
+            }
+            catch (GeneralSecurityException x)
+            {
+                throw new IllegalArgumentException("Unsupported curve " + name, x);
+            }
+        }
+    }
+
+    private static class Key
+    {
+        private final int[] curves;
+        private final int hash;
+
+        private Key(int[] curves)
+        {
+            this.curves = curves;
+            this.hash = Arrays.hashCode(curves);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key that = (Key)obj;
+            return Arrays.equals(curves, that.curves);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.alpn.ALPN;
+import sun.security.util.Cache;
+
+/**
+ * <p>A {@link SessionStore} backed by a {@link RemoteSessionStore} shared by
+ * the servers of a cluster, so that a client resumes its session with the
+ * session id on any server of the cluster.</p>
+ * <p>A lookup first checks a local near-cache of session states, then asks
+ * the remote store. Lookups and stores issued concurrently by different
+ * handshakes are sent to the remote store in batches, at most
+ * {@code batchSize} operations at a time and after at most
+ * {@code batchDelay} milliseconds.
+ * A lookup waits at most {@code timeout} milliseconds for the remote
+ * store: when the remote store is slow or fails, the lookup misses and the
+ * handshake falls back to a full handshake.
+ * Stores never wait for the remote store.</p>
+ * <p>Sessions removed by one server, for example because they were
+ * invalidated, are removed from the remote store; other servers may still
+ * find them in their near-cache for at most {@code nearCacheTimeout}
+ * seconds.</p>
+ * <p>Session states are encrypted and authenticated with AES-GCM under a
+ * {@link SessionTicketKey} shared by the servers of the cluster, so the
+ * remote store never sees master secrets in clear.</p>
+ * <pre>
+ * DistributedSessionStore store = new DistributedSessionStore(remote, key, 1024, 5, 50, 64, 1);
+ * SessionStores.install(sslContext.getServerSessionContext(), store);
+ * </pre>
+ */
+public class DistributedSessionStore implements SessionStore, Closeable
+{
+    private static final int DEFAULT_NEAR_CACHE_TIMEOUT = 5;
+
+    private final RemoteSessionStore remote;
+    private final SessionTicketKey key;
+    private final Cache<SessionId, SessionState> nearCache;
+    private final long timeout;
+    private final int batchSize;
+    private final long batchDelay;
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+    private final LongAdder nearHits = new LongAdder();
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private List<Lookup> lookups = new ArrayList<>();
+    private List<byte[]> storeIds = new ArrayList<>();
+    private List<byte[]> storeValues = new ArrayList<>();
+    private List<byte[]> removeIds = new ArrayList<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param remote the remote session store
+     * @param key the key that encrypts the session states
+     * @param nearCacheSize the maximum number of session states kept locally
+     * @param timeout the maximum time in milliseconds a lookup waits for the remote store
+     * @param batchSize the maximum number of operations sent to the remote store at once
+     * @param batchDelay the maximum time in milliseconds an operation waits for its batch to be sent
+     */
+    public DistributedSessionStore(RemoteSessionStore remote, SessionTicketKey key, int nearCacheSize, long timeout, int batchSize, long batchDelay)
+    {
+        this(remote, key, nearCacheSize, DEFAULT_NEAR_CACHE_TIMEOUT, timeout, batchSize, batchDelay);
+    }
+
+    /**
+     * @param remote the remote session store
+     * @param key the key that encrypts the session states
+     * @param nearCacheSize the maximum number of session states kept locally
+     * @param nearCacheTimeout the maximum time in seconds a session state is kept locally
+     * @param timeout the maximum time in milliseconds a lookup waits for the remote store
+     * @param batchSize the maximum number of operations sent to the remote store at once
+     * @param batchDelay the maximum time in milliseconds an operation waits for its batch to be sent
+     */
+    public DistributedSessionStore(RemoteSessionStore remote, SessionTicketKey key, int nearCacheSize, int nearCacheTimeout, long timeout, int batchSize, long batchDelay)
+    {
+        if (nearCacheTimeout <= 0)
+            throw new IllegalArgumentException("Invalid near-cache timeout " + nearCacheTimeout);
+        if (timeout <= 0)
+            throw new IllegalArgumentException("Invalid timeout " + timeout);
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("Invalid batch size " + batchSize);
+        if (batchDelay < 0)
+            throw new IllegalArgumentException("Invalid batch delay " + batchDelay);
+        this.remote = remote;
+        this.key = key;
+        this.nearCache = Cache.newSoftMemoryCache(nearCacheSize, nearCacheTimeout);
+        this.timeout = timeout;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "DistributedSessionStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public SessionState get(byte[] sessionId)
+    {
+        SessionId id = new SessionId(sessionId);
+        SessionState state = nearCache.get(id);
+        if (state != null)
+        {
+            nearHits.increment();
+            return state;
+        }
+
+        Lookup lookup = new Lookup(sessionId);
+        boolean flush;
+        synchronized (lock)
+        {
+            lookups.add(lookup);
+            flush = schedule(lookups.size());
+        }
+        if (flush)
+            flush();
+
+        byte[] value;
+        try
+        {
+            value = lookup.result.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException x)
+        {
+            timeouts.increment();
+            if (ALPN.debug)
+                System.err.println("[S] Session store lookup timed out after " + timeout + " ms");
+            return null;
+        }
+        catch (ExecutionException x)
+        {
+            failures.increment();
+            if (ALPN.debug)
+                System.err.println("[S] Session store lookup failed: " + x.getCause());
+            return null;
+        }
+        catch (InterruptedException x)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        state = value == null ? null : decode(value);
+        if (state == null)
+        {
+            misses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        nearCache.put(id, state);
+        return state;
+    }
+
+    @Override
+    public void put(byte[] sessionId, SessionState state)
+    {
+        nearCache.put(new SessionId(sessionId), state);
+        byte[] encrypted;
+        try
+        {
+            encrypted = SessionTickets.encrypt(state.encode(), key);
+        }
+        catch (IOException | GeneralSecurityException x)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Could not encrypt session state: " + x);
+            return;
+        }
+        boolean flush;
+        synchronized (lock)
+        {
+            storeIds.add(sessionId);
+            storeValues.add(encrypted);
+            flush = schedule(storeIds.size());
+        }
+        if (flush)
+            flush();
+    }
+
+    @Override
+    public void remove(byte[] sessionId)
+    {
+        nearCache.remove(new SessionId(sessionId));
+        boolean flush;
+        synchronized (lock)
+        {
+            removeIds.add(sessionId);
+            flush = schedule(removeIds.size());
+        }
+        if (flush)
+            flush();
+    }
+
+    /**
+     * @return whether the operations must be flushed by the caller, because the batch is full
+     */
+    private boolean schedule(int pending)
+    {
+        if (pending >= batchSize)
+            return true;
+        if (!flushScheduled)
+        {
+            flushScheduled = true;
+            scheduler.schedule(this::flush, batchDelay, TimeUnit.MILLISECONDS);
+        }
+        return false;
+    }
+
+    private void flush()
+    {
+        List<Lookup> lookups;
+        List<byte[]> storeIds;
+        List<byte[]> storeValues;
+        List<byte[]> removeIds;
+        synchronized (lock)
+        {
+            lookups = this.lookups;
+            storeIds = this.storeIds;
+            storeValues = this.storeValues;
+            removeIds = this.removeIds;
+            this.lookups = new ArrayList<>();
+            this.storeIds = new ArrayList<>();
+            this.storeValues = new ArrayList<>();
+            this.removeIds = new ArrayList<>();
+            flushScheduled = false;
+        }
+        // Operations queued while a flush was pending may exceed the batch size.
+        for (int i = 0; i < lookups.size(); i += batchSize)
+            sendLookups(lookups.subList(i, Math.min(i + batchSize, lookups.size())));
+        for (int i = 0; i < storeIds.size(); i += batchSize)
+        {
+            int end = Math.min(i + batchSize, storeIds.size());
+            sendStores(storeIds.subList(i, end), storeValues.subList(i, end));
+        }
+        for (int i = 0; i < removeIds.size(); i += batchSize)
+            sendRemoves(removeIds.subList(i, Math.min(i + batchSize, removeIds.size())));
+    }
+
+    private void sendLookups(List<Lookup> batch)
+    {
+        batches.increment();
+        List<byte[]> sessionIds = new ArrayList<>(batch.size());
+        for (Lookup lookup : batch)
+            sessionIds.add(lookup.sessionId);
+        CompletableFuture<List<byte[]>> future;
+        try
+        {
+            future = remote.getAll(sessionIds);
+        }
+        catch (RuntimeException x)
+        {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(x);
+        }
+        future.whenComplete((values, failure) ->
+        {
+            if (failure == null && (values == null || values.size() != batch.size()))
+                failure = new IllegalStateException("Invalid session store reply");
+            for (int i = 0; i < batch.size(); ++i)
+            {
+                if (failure == null)
+                    batch.get(i).result.complete(values.get(i));
+                else
+                    batch.get(i).result.completeExceptionally(failure);
+            }
+        });
+    }
+
+    private void sendStores(List<byte[]> sessionIds, List<byte[]> values)
+    {
+        batches.increment();
+        try
+        {
+            remote.putAll(sessionIds, values).whenComplete(this::updateFailed);
+        }
+        catch (RuntimeException x)
+        {
+            updateFailed(null, x);
+        }
+    }
+
+    private void sendRemoves(List<byte[]> sessionIds)
+    {
+        batches.increment();
+        try
+        {
+            remote.removeAll(sessionIds).whenComplete(this::updateFailed);
+        }
+        catch (RuntimeException x)
+        {
+            updateFailed(null, x);
+        }
+    }
+
+    private void updateFailed(Void result, Throwable failure)
+    {
+        if (failure == null)
+            return;
+        failures.increment();
+        if (ALPN.debug)
+            System.err.println("[S] Session store update failed: " + failure);
+    }
+
+    private SessionState decode(byte[] encrypted)
+    {
+        if (encrypted.length < SessionTicketKey.NAME_LENGTH || !key.hasName(Arrays.copyOf(encrypted, SessionTicketKey.NAME_LENGTH)))
+            return null;
+        try
+        {
+            byte[] state = SessionTickets.decrypt(encrypted, key);
+            try
+            {
+                return SessionState.decode(state);
+            }
+            finally
+            {
+                Arrays.fill(state, (byte)0);
+            }
+        }
+        catch (IOException | GeneralSecurityException | IllegalArgumentException x)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Invalid session state in session store: " + x);
+            return null;
+        }
+    }
+
+    /**
+     * <p>Sends the pending operations to the remote store and stops the batching thread.</p>
+     */
+    @Override
+    public void close()
+    {
+        flush();
+        scheduler.shutdown();
+    }
+
+    /**
+     * @return the number of lookups found in the near-cache
+     */
+    public long getNearHits()
+    {
+        return nearHits.sum();
+    }
+
+    /**
+     * @return the number of lookups found in the remote store
+     */
+    public long getRemoteHits()
+    {
+        return remoteHits.sum();
+    }
+
+    /**
+     * @return the number of lookups not found
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not complete before the timeout
+     */
+    public long getTimeouts()
+    {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return the number of operations that failed in the remote store
+     */
+    public long getFailures()
+    {
+        return failures.sum();
+    }
+
+    /**
+     * @return the number of batches sent to the remote store
+     */
+    public long getBatches()
+    {
+        return batches.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,timeout=%d,batch=%d/%d]", getClass().getSimpleName(), hashCode(), remote, timeout, batchSize, batchDelay);
+    }
+
+    private static class Lookup
+    {
+        private final byte[] sessionId;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        private Lookup(byte[] sessionId)
+        {
+            this.sessionId = sessionId;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLException;
+
+/**
+ * <p>A Certificate handshake message whose body is encoded once, so that it
+ * can be sent for every full handshake with a single bulk copy, instead of
+ * encoding the certificate chain again as {@link HandshakeMessage.CertificateMsg}
+ * does.</p>
+ * <p>Instances are immutable and can be shared among handshakes.</p>
+ */
+final class EncodedCertificateMsg extends HandshakeMessage
+{
+    private final X509Certificate[] chain;
+    private final byte[] body;
+
+    EncodedCertificateMsg(X509Certificate[] chain) throws SSLException
+    {
+        this.chain = chain;
+        try
+        {
+            ByteArrayOutputStream certificates = new ByteArrayOutputStream(4096);
+            for (X509Certificate certificate : chain)
+            {
+                byte[] encoded = certificate.getEncoded();
+                putInt24(certificates, encoded.length);
+                certificates.write(encoded, 0, encoded.length);
+            }
+            ByteArrayOutputStream message = new ByteArrayOutputStream(3 + certificates.size());
+            putInt24(message, certificates.size());
+            certificates.writeTo(message);
+            this.body = message.toByteArray();
+        }
+        catch (CertificateEncodingException | IOException x)
+        {
+            throw new SSLException("Could not encode certificates", x);
+        }
+    }
+
+    private static void putInt24(ByteArrayOutputStream output, int value)
+    {
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+
+    /**
+     * @param digest the digest to update with the message body
+     */
+    void digest(MessageDigest digest)
+    {
+        digest.update(body);
+    }
+
+    @Override
+    int messageType()
+    {
+        return ht_certificate;
+    }
+
+    @Override
+    int messageLength()
+    {
+        return body.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream output) throws IOException
+    {
+        output.write(body, 0, body.length);
+    }
+
+    @Override
+    void print(PrintStream output) throws IOException
+    {
+        new CertificateMsg(chain).print(output);
+    }
+}
@@ -107,5 +107,17 @@ final class ExtensionType {
     // ALPN_CHANGES_BEGIN
     final static ExtensionType EXT_ALPN =
             e(0x10, "application_layer_protocol_negotiation");
+
+    // extensions defined in RFC 7250
+    final static ExtensionType EXT_SERVER_CERTIFICATE_TYPE =
+            e(0x0014, "server_certificate_type"); // IANA registry value: 20
+
+    // extensions defined in RFC 7924
+    final static ExtensionType EXT_CACHED_INFO =
+            e(0x0019, "cached_info");            // IANA registry value: 25
+
+    // extensions defined in RFC 5077
+    final static ExtensionType EXT_SESSION_TICKET =
+            e(0x0023, "SessionTicket");          // IANA registry value: 35
     // ALPN_CHANGES_END
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.alpn.ALPN;
+
+/**
+ * <p>A {@link SessionTicketKeyProvider} that reads the session ticket keys
+ * from a local file, so that servers that read the same file share keys.</p>
+ * <p>Each non blank line of the file that does not start with {@code #}
+ * contains a key, as the hexadecimal key name (16 bytes) followed by
+ * whitespace and the hexadecimal AES key (16 or 32 bytes).
+ * The first key encrypts new tickets; all the keys decrypt tickets.</p>
+ * <p>The file is read again when its last modified time changes, checked at
+ * most once per {@code checkInterval}, so keys are rotated by atomically
+ * replacing the file.
+ * Only the handshake that claims a check reads the file; concurrent
+ * handshakes keep using the current keys meanwhile.
+ * If the file cannot be read again, the previous keys are kept.</p>
+ */
+public class FileSessionTicketKeyProvider implements SessionTicketKeyProvider
+{
+    private final Path file;
+    private final long checkInterval;
+    private final AtomicReference<Keys> keys;
+
+    /**
+     * @param file the file containing the keys
+     * @param checkInterval the interval in milliseconds between checks of the file
+     * @throws IOException if the file cannot be read or contains invalid keys
+     */
+    public FileSessionTicketKeyProvider(Path file, long checkInterval) throws IOException
+    {
+        this.file = file;
+        this.checkInterval = checkInterval;
+        this.keys = new AtomicReference<>(load());
+    }
+
+    @Override
+    public SessionTicketKey getEncryptionKey()
+    {
+        List<SessionTicketKey> list = keys().list;
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    @Override
+    public SessionTicketKey getDecryptionKey(byte[] name)
+    {
+        for (SessionTicketKey key : keys().list)
+        {
+            if (key.hasName(name))
+                return key;
+        }
+        return null;
+    }
+
+    private Keys keys()
+    {
+        Keys current = keys.get();
+        long now = System.currentTimeMillis();
+        if (now - current.checked < checkInterval)
+            return current;
+        Keys checked = new Keys(current.list, current.lastModified, now);
+        if (!keys.compareAndSet(current, checked))
+            return current;
+        try
+        {
+            if (Files.getLastModifiedTime(file).toMillis() != current.lastModified)
+            {
+                Keys loaded = load();
+                keys.compareAndSet(checked, loaded);
+                return loaded;
+            }
+        }
+        catch (IOException | RuntimeException x)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Could not reload session ticket keys from " + file + ": " + x);
+        }
+        return checked;
+    }
+
+    private Keys load() throws IOException
+    {
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        List<SessionTicketKey> list = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII))
+        {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2)
+                throw new IOException("Invalid session ticket key line in " + file);
+            try
+            {
+                list.add(new SessionTicketKey(fromHex(parts[0]), fromHex(parts[1])));
+            }
+            catch (IllegalArgumentException x)
+            {
+                throw new IOException("Invalid session ticket key in " + file, x);
+            }
+        }
+        return new Keys(list, lastModified, System.currentTimeMillis());
+    }
+
+    private static byte[] fromHex(String hex)
+    {
+        if (hex.length() % 2 != 0)
+            throw new IllegalArgumentException("Invalid hexadecimal string");
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = (byte)Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,keys=%d]", getClass().getSimpleName(), hashCode(), file, keys.get().list.size());
+    }
+
+    private static class Keys
+    {
+        private final List<SessionTicketKey> list;
+        private final long lastModified;
+        private final long checked;
+
+        private Keys(List<SessionTicketKey> list, long lastModified, long checked)
+        {
+            this.list = list;
+            this.lastModified = lastModified;
+            this.checked = checked;
+        }
+    }
+}
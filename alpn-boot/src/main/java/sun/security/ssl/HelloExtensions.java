@@ -89,6 +89,14 @@ final class HelloExtensions {
             // ALPN_CHANGES_BEGIN
             } else if (extType == ExtensionType.EXT_ALPN) {
                 extension = new ALPNExtension(s, extlen);
+            } else if (extType == ExtensionType.EXT_SESSION_TICKET) {
+                extension = new SessionTicketExtension(s, extlen);
+            } else if (extType == ExtensionType.EXT_STATUS_REQUEST) {
+                extension = new CertStatusRequestExtension(s, extlen);
+            } else if (extType == ExtensionType.EXT_CACHED_INFO) {
+                extension = new CachedInfoExtension(s, extlen);
+            } else if (extType == ExtensionType.EXT_SERVER_CERTIFICATE_TYPE) {
+                extension = new ServerCertificateTypeExtension(s, extlen);
             // ALPN_CHANGES_END
             } else {
                 extension = new UnknownExtension(s, extlen, extType);
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+
+import sun.security.provider.certpath.OCSP;
+import sun.security.util.DerOutputStream;
+import sun.security.util.DerValue;
+import sun.security.x509.AlgorithmId;
+
+/**
+ * <p>An {@link OCSPFetcher} that sends OCSP requests over HTTP to the
+ * responder named in the Authority Information Access extension of the
+ * certificate, see RFC 6960, appendix A.</p>
+ */
+public class HttpOCSPFetcher implements OCSPFetcher
+{
+    private static final int MAX_RESPONSE_LENGTH = 64 * 1024;
+
+    private final int timeout;
+
+    /**
+     * @param timeout the connect and read timeout in milliseconds
+     */
+    public HttpOCSPFetcher(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public byte[] fetch(X509Certificate certificate, X509Certificate issuer) throws IOException
+    {
+        URI responder = OCSP.getResponderURI(certificate);
+        if (responder == null)
+            throw new IOException("No OCSP responder for " + certificate.getSubjectX500Principal());
+        byte[] request = newRequest(certificate, issuer);
+        HttpURLConnection connection = (HttpURLConnection)responder.toURL().openConnection();
+        try
+        {
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/ocsp-request");
+            connection.setFixedLengthStreamingMode(request.length);
+            try (OutputStream output = connection.getOutputStream())
+            {
+                output.write(request);
+            }
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+                throw new IOException("OCSP responder " + responder + " replied " + connection.getResponseCode());
+            try (InputStream input = connection.getInputStream())
+            {
+                ByteArrayOutputStream response = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = input.read(buffer)) >= 0)
+                {
+                    response.write(buffer, 0, read);
+                    if (response.size() > MAX_RESPONSE_LENGTH)
+                        throw new IOException("OCSP response too large from " + responder);
+                }
+                return response.toByteArray();
+            }
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return a DER encoded OCSPRequest for the certificate, with a SHA-1 CertID
+     */
+    static byte[] newRequest(X509Certificate certificate, X509Certificate issuer) throws IOException
+    {
+        MessageDigest sha1;
+        try
+        {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        }
+        catch (GeneralSecurityException x)
+        {
+            throw new IOException(x);
+        }
+        byte[] nameHash = sha1.digest(issuer.getSubjectX500Principal().getEncoded());
+        byte[] keyHash = sha1.digest(BasicOCSPResponse.subjectPublicKey(issuer));
+
+        DerOutputStream certIdFields = new DerOutputStream();
+        new AlgorithmId(AlgorithmId.SHA_oid).encode(certIdFields);
+        certIdFields.putOctetString(nameHash);
+        certIdFields.putOctetString(keyHash);
+        certIdFields.putInteger(certificate.getSerialNumber());
+
+        // OCSPRequest { TBSRequest { requestList { Request { CertID } } } }
+        DerOutputStream certId = new DerOutputStream();
+        certId.write(DerValue.tag_Sequence, certIdFields);
+        DerOutputStream request = new DerOutputStream();
+        request.write(DerValue.tag_Sequence, certId);
+        DerOutputStream requestList = new DerOutputStream();
+        requestList.write(DerValue.tag_Sequence, request);
+        DerOutputStream tbsRequest = new DerOutputStream();
+        tbsRequest.write(DerValue.tag_Sequence, requestList);
+        DerOutputStream ocspRequest = new DerOutputStream();
+        ocspRequest.write(DerValue.tag_Sequence, tbsRequest);
+        return ocspRequest.toByteArray();
+    }
+}
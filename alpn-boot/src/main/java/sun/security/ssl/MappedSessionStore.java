@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.eclipse.jetty.alpn.ALPN;
+
+/**
+ * <p>A {@link SessionStore} that keeps session states in a memory-mapped
+ * file, so that a restarted server resumes the sessions established before
+ * the restart, and so that the sessions do not use heap memory.</p>
+ * <p>The file is a header followed by a table of fixed-size slots.
+ * The slot table is the on-disk index: a session is stored in the first
+ * free slot among {@link #PROBES} slots starting at the slot selected by
+ * the hash of its session id, or replaces the oldest session among them.
+ * Each slot holds the session id, the creation time of the session and
+ * the session state encrypted with AES-GCM under a {@link SessionTicketKey}
+ * and authenticated together with the session id, so that the file never
+ * contains master secrets in clear and a state copied to the slot of
+ * another session is rejected; the same key must be used after a restart.
+ * Session states larger than a slot are not stored.</p>
+ * <p>Slots are locked in stripes, so lookups of different sessions do not
+ * contend.</p>
+ */
+public class MappedSessionStore implements SessionStore, Closeable
+{
+    /**
+     * The number of slots probed for a session.
+     */
+    public static final int PROBES = 8;
+
+    private static final int MAGIC = 0x544C5353;
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 16;
+    private static final int MAX_SESSION_ID_LENGTH = 32;
+    // id length (1), id (32), creation time (8), data length (4)
+    private static final int SLOT_HEADER_LENGTH = 1 + MAX_SESSION_ID_LENGTH + 8 + 4;
+    private static final int STRIPES = 64;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int slotLength;
+    private final SessionTicketKey key;
+    private final Object[] locks = new Object[STRIPES];
+
+    /**
+     * @param file the file that stores the sessions, created if it does not exist
+     * @param slots the number of slots
+     * @param slotLength the length in bytes of each slot
+     * @param key the key that encrypts the session states
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedSessionStore(Path file, int slots, int slotLength, SessionTicketKey key) throws IOException
+    {
+        if (slots < PROBES)
+            throw new IllegalArgumentException("Invalid slot count " + slots);
+        if (slotLength <= SLOT_HEADER_LENGTH)
+            throw new IllegalArgumentException("Invalid slot length " + slotLength);
+        long length = HEADER_LENGTH + (long)slots * slotLength;
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Session store too large " + length);
+        this.slots = slots;
+        this.slotLength = slotLength;
+        this.key = key;
+        for (int i = 0; i < locks.length; ++i)
+            locks[i] = new Object();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        catch (IOException | RuntimeException x)
+        {
+            channel.close();
+            throw x;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != slots || buffer.getInt(12) != slotLength)
+        {
+            // New file, or a file with a different layout: start empty.
+            if (ALPN.debug)
+                System.err.println("[S] Initializing session store " + file);
+            for (int slot = 0; slot < slots; ++slot)
+                buffer.putInt(offset(slot) + SLOT_HEADER_LENGTH - 4, 0);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, slots);
+            buffer.putInt(12, slotLength);
+        }
+    }
+
+    @Override
+    public SessionState get(byte[] sessionId)
+    {
+        if (sessionId.length == 0 || sessionId.length > MAX_SESSION_ID_LENGTH)
+            return null;
+        int start = start(sessionId);
+        for (int probe = 0; probe < PROBES; ++probe)
+        {
+            int slot = (start + probe) % slots;
+            byte[] encrypted;
+            synchronized (lockFor(slot))
+            {
+                if (!matches(slot, sessionId))
+                    continue;
+                int offset = offset(slot);
+                int length = buffer.getInt(offset + SLOT_HEADER_LENGTH - 4);
+                if (length > slotLength - SLOT_HEADER_LENGTH)
+                    return null;
+                encrypted = new byte[length];
+                ByteBuffer data = buffer.duplicate();
+                data.position(offset + SLOT_HEADER_LENGTH);
+                data.get(encrypted);
+            }
+            return decode(sessionId, encrypted);
+        }
+        return null;
+    }
+
+    @Override
+    public void put(byte[] sessionId, SessionState state)
+    {
+        if (sessionId.length == 0 || sessionId.length > MAX_SESSION_ID_LENGTH)
+            return;
+        byte[] encrypted;
+        try
+        {
+            encrypted = SessionTickets.encrypt(state.encode(), key, sessionId);
+        }
+        catch (IOException | GeneralSecurityException x)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Could not encrypt session state: " + x);
+            return;
+        }
+        if (encrypted.length > slotLength - SLOT_HEADER_LENGTH)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Session state too large for session store: " + encrypted.length);
+            return;
+        }
+
+        int start = start(sessionId);
+        int victim = -1;
+        long victimCreationTime = Long.MAX_VALUE;
+        for (int probe = 0; probe < PROBES; ++probe)
+        {
+            int slot = (start + probe) % slots;
+            synchronized (lockFor(slot))
+            {
+                int offset = offset(slot);
+                if (buffer.getInt(offset + SLOT_HEADER_LENGTH - 4) == 0 || matches(slot, sessionId))
+                {
+                    write(slot, sessionId, state.getCreationTime(), encrypted);
+                    return;
+                }
+                long creationTime = buffer.getLong(offset + 1 + MAX_SESSION_ID_LENGTH);
+                if (creationTime < victimCreationTime)
+                {
+                    victim = slot;
+                    victimCreationTime = creationTime;
+                }
+            }
+        }
+        synchronized (lockFor(victim))
+        {
+            write(victim, sessionId, state.getCreationTime(), encrypted);
+        }
+    }
+
+    @Override
+    public void remove(byte[] sessionId)
+    {
+        if (sessionId.length == 0 || sessionId.length > MAX_SESSION_ID_LENGTH)
+            return;
+        int start = start(sessionId);
+        for (int probe = 0; probe < PROBES; ++probe)
+        {
+            int slot = (start + probe) % slots;
+            synchronized (lockFor(slot))
+            {
+                if (matches(slot, sessionId))
+                {
+                    buffer.putInt(offset(slot) + SLOT_HEADER_LENGTH - 4, 0);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>Writes the sessions to the file and closes it.</p>
+     * <p>The mapping itself is only released when the store is garbage
+     * collected, so the store must not be used once closed.</p>
+     */
+    @Override
+    public void close() throws IOException
+    {
+        buffer.force();
+        channel.close();
+    }
+
+    private void write(int slot, byte[] sessionId, long creationTime, byte[] encrypted)
+    {
+        int offset = offset(slot);
+        // Mark the slot free while it is rewritten.
+        buffer.putInt(offset + SLOT_HEADER_LENGTH - 4, 0);
+        ByteBuffer data = buffer.duplicate();
+        data.position(offset);
+        data.put((byte)sessionId.length);
+        data.put(sessionId);
+        data.position(offset + 1 + MAX_SESSION_ID_LENGTH);
+        data.putLong(creationTime);
+        data.position(offset + SLOT_HEADER_LENGTH);
+        data.put(encrypted);
+        buffer.putInt(offset + SLOT_HEADER_LENGTH - 4, encrypted.length);
+    }
+
+    private boolean matches(int slot, byte[] sessionId)
+    {
+        int offset = offset(slot);
+        if (buffer.getInt(offset + SLOT_HEADER_LENGTH - 4) == 0)
+            return false;
+        if ((buffer.get(offset) & 0xFF) != sessionId.length)
+            return false;
+        for (int i = 0; i < sessionId.length; ++i)
+        {
+            if (buffer.get(offset + 1 + i) != sessionId[i])
+                return false;
+        }
+        return true;
+    }
+
+    private SessionState decode(byte[] sessionId, byte[] encrypted)
+    {
+        if (!key.hasName(Arrays.copyOf(encrypted, SessionTicketKey.NAME_LENGTH)))
+            return null;
+        try
+        {
+            byte[] state = SessionTickets.decrypt(encrypted, key, sessionId);
+            try
+            {
+                return SessionState.decode(state);
+            }
+            finally
+            {
+                Arrays.fill(state, (byte)0);
+            }
+        }
+        catch (IOException | GeneralSecurityException | IllegalArgumentException x)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Invalid session state in session store: " + x);
+            return null;
+        }
+    }
+
+    private int start(byte[] sessionId)
+    {
+        return (Arrays.hashCode(sessionId) & 0x7FFFFFFF) % slots;
+    }
+
+    private int offset(int slot)
+    {
+        return HEADER_LENGTH + slot * slotLength;
+    }
+
+    private Object lockFor(int slot)
+    {
+        return locks[slot % STRIPES];
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[slots=%d,slotLength=%d]", getClass().getSimpleName(), hashCode(), slots, slotLength);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * <p>The NewSessionTicket handshake message, see RFC 5077.</p>
+ * <p>The server sends it after the client Finished message of a full
+ * handshake, before its ChangeCipherSpec message; the client keeps the
+ * ticket with the session.</p>
+ */
+final class NewSessionTicketMsg extends HandshakeMessage
+{
+    static final byte ht_new_session_ticket = 4;
+
+    private final int lifetimeHint;
+    private final byte[] ticket;
+
+    NewSessionTicketMsg(int lifetimeHint, byte[] ticket)
+    {
+        this.lifetimeHint = lifetimeHint;
+        this.ticket = ticket;
+    }
+
+    NewSessionTicketMsg(HandshakeInStream input) throws IOException
+    {
+        this.lifetimeHint = (input.getInt16() << 16) | input.getInt16();
+        this.ticket = input.getBytes16();
+    }
+
+    byte[] getTicket()
+    {
+        return ticket;
+    }
+
+    @Override
+    int messageType()
+    {
+        return ht_new_session_ticket;
+    }
+
+    @Override
+    int messageLength()
+    {
+        return 4 + 2 + ticket.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream output) throws IOException
+    {
+        output.putInt16(lifetimeHint >>> 16);
+        output.putInt16(lifetimeHint & 0xFFFF);
+        output.putBytes16(ticket);
+    }
+
+    @Override
+    void print(PrintStream output) throws IOException
+    {
+        output.println("*** NewSessionTicket, lifetime hint: " + lifetimeHint + "s, ticket length: " + ticket.length);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.cert.X509Certificate;
+
+import sun.security.provider.certpath.OCSP;
+
+/**
+ * <p>A {@link RevocationCache.Checker} that asks the OCSP responder named in
+ * the certificate; the response must be signed by the issuer of the
+ * certificate or by a responder delegated by the issuer.</p>
+ * <p>The status is kept until the nextUpdate of the response, or at most
+ * for the max age of the {@link RevocationCache} when the responder did
+ * not set it.</p>
+ */
+public class OCSPChecker implements RevocationCache.Checker
+{
+    private final HttpOCSPFetcher fetcher;
+
+    public OCSPChecker()
+    {
+        this(15000);
+    }
+
+    /**
+     * @param timeout the connect and read timeout in milliseconds of the requests to the responders
+     */
+    public OCSPChecker(int timeout)
+    {
+        this.fetcher = new HttpOCSPFetcher(timeout);
+    }
+
+    @Override
+    public RevocationCache.Result check(X509Certificate certificate, X509Certificate issuer) throws IOException
+    {
+        URI responder = OCSP.getResponderURI(certificate);
+        if (responder == null)
+            return new RevocationCache.Result(RevocationCache.Status.UNKNOWN, 0);
+        byte[] response = fetcher.fetch(certificate, issuer);
+        return BasicOCSPResponse.check(response, certificate, issuer, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+
+/**
+ * <p>Fetches the OCSP response of a certificate, for {@link OCSPStapler}.</p>
+ *
+ * @see HttpOCSPFetcher
+ */
+public interface OCSPFetcher
+{
+    /**
+     * <p>Called from the background thread of the stapler, never from a handshake.</p>
+     *
+     * @param certificate the certificate
+     * @param issuer the issuer of the certificate
+     * @return the DER encoded OCSPResponse, see RFC 6960
+     * @throws IOException if the response cannot be fetched
+     */
+    byte[] fetch(X509Certificate certificate, X509Certificate issuer) throws IOException;
+}
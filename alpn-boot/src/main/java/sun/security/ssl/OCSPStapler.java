@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSessionContext;
+
+import org.eclipse.jetty.alpn.ALPN;
+
+/**
+ * <p>Staples the OCSP responses of the server certificates to the
+ * handshakes of clients that send the status_request extension, so that
+ * clients do not contact the OCSP responder before the first request.</p>
+ * <p>The responses are fetched by an {@link OCSPFetcher} on a background
+ * thread and kept in memory: handshakes never wait for a responder.
+ * A certificate chain is fetched when it is {@link #register(X509Certificate[]) registered},
+ * or else the first time it is used by a handshake, which is then not
+ * stapled; its response is then refreshed every {@code refreshInterval}.
+ * When the responder fails, the previous response is stapled until it is
+ * older than {@code maxAge}, and never after its nextUpdate time.
+ * Only successful OCSP responses that contain the status of the
+ * certificate, signed by its issuer or by a responder delegated by the
+ * issuer, are stapled.</p>
+ * <p>A chain that is not used by any handshake for {@code maxAge}, for
+ * example because the server key changed, or whose certificate expired, is
+ * {@link #unregister(X509Certificate) unregistered} automatically.</p>
+ * <pre>
+ * OCSPStapler stapler = new OCSPStapler(new HttpOCSPFetcher(5000), TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(2));
+ * stapler.register(chain);
+ * OCSPStapler.install(sslContext.getServerSessionContext(), stapler);
+ * </pre>
+ * <p>{@link #uninstall(SSLSessionContext)} only detaches the stapler from
+ * the context; the refresh thread runs until {@link #close()}.</p>
+ */
+public class OCSPStapler implements Closeable
+{
+    private static final WeakIdentityMap<SSLSessionContext, OCSPStapler> staplers = new WeakIdentityMap<>();
+
+    private final ConcurrentMap<X509Certificate, Entry> entries = new ConcurrentHashMap<>();
+    private final OCSPFetcher fetcher;
+    private final long refreshInterval;
+    private final long maxAge;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param fetcher the fetcher of the OCSP responses
+     * @param refreshInterval the interval in milliseconds between refreshes of a response
+     * @param maxAge the maximum age in milliseconds of a stapled response
+     */
+    public OCSPStapler(OCSPFetcher fetcher, long refreshInterval, long maxAge)
+    {
+        if (refreshInterval <= 0)
+            throw new IllegalArgumentException("Invalid refresh interval " + refreshInterval);
+        if (maxAge < refreshInterval)
+            throw new IllegalArgumentException("Invalid max age " + maxAge);
+        this.fetcher = fetcher;
+        this.refreshInterval = refreshInterval;
+        this.maxAge = maxAge;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "OCSPStapler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * <p>Installs a stapler on a server session context.</p>
+     *
+     * @param context the server session context of a {@code SSLContext}
+     * @param stapler the stapler for the server handshakes of the context
+     */
+    public static void install(SSLSessionContext context, OCSPStapler stapler)
+    {
+        staplers.put(context, stapler);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the stapler installed on the context, or null if no stapler is installed
+     */
+    public static OCSPStapler get(SSLSessionContext context)
+    {
+        return staplers.get(context);
+    }
+
+    /**
+     * <p>Removes the stapler installed on a server session context.</p>
+     *
+     * @param context the server session context of a {@code SSLContext}
+     * @return the stapler that was installed on the context, or null if no stapler was installed
+     */
+    public static OCSPStapler uninstall(SSLSessionContext context)
+    {
+        return staplers.remove(context);
+    }
+
+    /**
+     * <p>Starts fetching and refreshing the OCSP response of a certificate chain.</p>
+     *
+     * @param chain the certificate chain of the server, the certificate first
+     * @return whether the chain can be stapled, that is whether it contains the issuer of the certificate
+     */
+    public boolean register(X509Certificate[] chain)
+    {
+        if (chain == null || chain.length < 2)
+            return false;
+        X509Certificate issuer = RevocationCache.findIssuer(chain[0], Arrays.copyOfRange(chain, 1, chain.length));
+        if (issuer == null)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] OCSP response not available, no issuer in the chain of " + chain[0].getSubjectX500Principal());
+            return false;
+        }
+        Entry entry = new Entry(chain[0], issuer);
+        if (entries.putIfAbsent(chain[0], entry) == null)
+        {
+            // The first refresh may unregister the entry, so it
+            // must not run before the periodic task is assigned.
+            entry.task = scheduler.scheduleWithFixedDelay(() -> refresh(entry), refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+            scheduler.execute(() -> refresh(entry));
+        }
+        return true;
+    }
+
+    /**
+     * <p>Stops fetching the OCSP response of a certificate, for example
+     * because the server does not use it anymore.</p>
+     *
+     * @param certificate the server certificate
+     * @return whether the certificate was registered
+     */
+    public boolean unregister(X509Certificate certificate)
+    {
+        Entry entry = entries.get(certificate);
+        return entry != null && unregister(entry);
+    }
+
+    private boolean unregister(Entry entry)
+    {
+        ScheduledFuture<?> task = entry.task;
+        if (task != null)
+            task.cancel(false);
+        if (!entries.remove(entry.certificate, entry))
+            return false;
+        if (ALPN.debug)
+            System.err.println("[S] OCSP response unregistered for " + entry.certificate.getSubjectX500Principal());
+        return true;
+    }
+
+    /**
+     * @return the OCSP response to staple for the chain, or null if none is available
+     */
+    byte[] staple(X509Certificate[] chain)
+    {
+        if (chain == null || chain.length < 2)
+            return null;
+        Entry entry = entries.get(chain[0]);
+        if (entry == null)
+        {
+            register(chain);
+            return null;
+        }
+        entry.used = System.currentTimeMillis();
+        return current(entry);
+    }
+
+    /**
+     * @param certificate the server certificate
+     * @return the OCSP response currently stapled for the certificate, or null
+     */
+    public byte[] getResponse(X509Certificate certificate)
+    {
+        Entry entry = entries.get(certificate);
+        return entry == null ? null : current(entry);
+    }
+
+    private byte[] current(Entry entry)
+    {
+        Response response = entry.response;
+        return response != null && response.isCurrent(System.currentTimeMillis(), maxAge) ? response.bytes : null;
+    }
+
+    private void refresh(Entry entry)
+    {
+        long now = System.currentTimeMillis();
+        if (now - entry.used > maxAge || now > entry.certificate.getNotAfter().getTime())
+        {
+            // The certificate is not used by the server anymore.
+            unregister(entry);
+            return;
+        }
+        try
+        {
+            byte[] bytes = fetcher.fetch(entry.certificate, entry.issuer);
+            long fetched = System.currentTimeMillis();
+            long nextUpdate = BasicOCSPResponse.check(bytes, entry.certificate, entry.issuer, fetched).getNextUpdate();
+            Response response = new Response(bytes, fetched, nextUpdate > 0 ? nextUpdate : Long.MAX_VALUE);
+            if (!response.isCurrent(response.fetched, maxAge))
+                throw new IOException("Expired OCSP response");
+            entry.response = response;
+            if (ALPN.debug)
+                System.err.println("[S] OCSP response refreshed for " + entry.certificate.getSubjectX500Principal());
+        }
+        catch (Throwable x)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Could not refresh OCSP response for " + entry.certificate.getSubjectX500Principal() + ": " + x);
+            Response response = entry.response;
+            if (response != null && !response.isCurrent(System.currentTimeMillis(), maxAge))
+                entry.response = null;
+        }
+    }
+
+    /**
+     * <p>Stops refreshing the OCSP responses.</p>
+     */
+    @Override
+    public void close()
+    {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,certificates=%d]", getClass().getSimpleName(), hashCode(), fetcher, entries.size());
+    }
+
+    private static class Entry
+    {
+        private final X509Certificate certificate;
+        private final X509Certificate issuer;
+        private volatile ScheduledFuture<?> task;
+        private volatile Response response;
+        private volatile long used;
+
+        private Entry(X509Certificate certificate, X509Certificate issuer)
+        {
+            this.certificate = certificate;
+            this.issuer = issuer;
+            this.used = System.currentTimeMillis();
+        }
+    }
+
+    private static class Response
+    {
+        private final byte[] bytes;
+        private final long fetched;
+        private final long nextUpdate;
+
+        private Response(byte[] bytes, long fetched, long nextUpdate)
+        {
+            this.bytes = bytes;
+            this.fetched = fetched;
+            this.nextUpdate = nextUpdate;
+        }
+
+        private boolean isCurrent(long now, long maxAge)
+        {
+            return now - fetched <= maxAge && now < nextUpdate;
+        }
+    }
+}
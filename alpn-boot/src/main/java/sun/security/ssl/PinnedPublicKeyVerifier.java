@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>A {@link PublicKeyVerifier} that trusts a fixed set of public keys,
+ * identified by the SHA-256 hash of their SubjectPublicKeyInfo encoding, as
+ * the pins of HTTP Public Key Pinning are.</p>
+ */
+public class PinnedPublicKeyVerifier implements PublicKeyVerifier
+{
+    private final List<byte[]> pins;
+
+    /**
+     * @param pins the SHA-256 hashes of the trusted public keys
+     */
+    public PinnedPublicKeyVerifier(Collection<byte[]> pins)
+    {
+        this.pins = new ArrayList<>(pins);
+    }
+
+    /**
+     * @param publicKey a public key
+     * @return the SHA-256 hash of the SubjectPublicKeyInfo encoding of the key
+     */
+    public static byte[] pin(PublicKey publicKey)
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded());
+        }
+        catch (NoSuchAlgorithmException x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    @Override
+    public void verify(PublicKey publicKey, String host, int port) throws CertificateException
+    {
+        byte[] pin = pin(publicKey);
+        for (byte[] candidate : pins)
+        {
+            if (MessageDigest.isEqual(pin, candidate))
+                return;
+        }
+        throw new CertificateException("Public key not pinned for " + host + ":" + port);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[pins=%d]", getClass().getSimpleName(), hashCode(), pins.size());
+    }
+}
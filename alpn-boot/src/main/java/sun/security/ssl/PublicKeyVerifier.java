@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+
+/**
+ * <p>Verifies the raw public key sent by a server instead of a certificate
+ * chain, see {@link RawPublicKeys}.</p>
+ * <p>Raw public keys carry no identity, so the verifier is in charge of
+ * binding the key to the host the client connects to, typically by pinning
+ * the keys of the known servers.</p>
+ *
+ * @see PinnedPublicKeyVerifier
+ */
+public interface PublicKeyVerifier
+{
+    /**
+     * @param publicKey the public key of the server
+     * @param host the host the client connects to, or null if unknown
+     * @param port the port the client connects to, or -1 if unknown
+     * @throws CertificateException if the key is not trusted for the host and port
+     */
+    void verify(PublicKey publicKey, String host, int port) throws CertificateException;
+}
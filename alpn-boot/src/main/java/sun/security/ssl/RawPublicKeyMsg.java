@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.security.PublicKey;
+
+import javax.net.ssl.SSLProtocolException;
+
+import sun.security.util.DerValue;
+import sun.security.x509.X509Key;
+
+/**
+ * <p>A Certificate handshake message that carries a raw public key, as the
+ * DER encoded SubjectPublicKeyInfo, instead of a certificate chain, see
+ * RFC 7250, section 3.</p>
+ */
+final class RawPublicKeyMsg extends HandshakeMessage
+{
+    private final PublicKey publicKey;
+    private final byte[] encoded;
+
+    RawPublicKeyMsg(PublicKey publicKey)
+    {
+        this.publicKey = publicKey;
+        this.encoded = publicKey.getEncoded();
+    }
+
+    RawPublicKeyMsg(HandshakeInStream input) throws IOException
+    {
+        this.encoded = input.getBytes24();
+        if (encoded.length == 0)
+            throw new SSLProtocolException("Empty raw public key");
+        this.publicKey = X509Key.parse(new DerValue(encoded));
+    }
+
+    PublicKey getPublicKey()
+    {
+        return publicKey;
+    }
+
+    @Override
+    int messageType()
+    {
+        return ht_certificate;
+    }
+
+    @Override
+    int messageLength()
+    {
+        return 3 + encoded.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream output) throws IOException
+    {
+        output.putBytes24(encoded);
+    }
+
+    @Override
+    void print(PrintStream output) throws IOException
+    {
+        output.println("*** Certificate, raw public key");
+        output.println(publicKey);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.security.PublicKey;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * <p>Raw public keys, see RFC 7250, so that servers authenticate with their
+ * public key instead of a certificate chain, for example between services
+ * that pin each other's keys.</p>
+ * <p>Installed on a client session context, clients offer to receive a raw
+ * public key, and verify it with the {@link PublicKeyVerifier} instead of
+ * the trust manager.
+ * Installed on a server session context, servers send the public key of
+ * their certificate instead of the chain to the clients that offer it; the
+ * verifier is not used by servers and may be null.
+ * Both peers keep accepting X.509 certificates with the peers that do not
+ * support raw public keys.</p>
+ * <pre>
+ * PublicKeyVerifier verifier = new PinnedPublicKeyVerifier(pins);
+ * RawPublicKeys.install(sslContext.getClientSessionContext(), new RawPublicKeys(verifier));
+ * </pre>
+ * <p>Sessions authenticated with a raw public key have no peer certificates,
+ * so {@link SSLSession#getPeerCertificates()} throws; the key is returned
+ * by {@link #getPeerPublicKey(SSLSession)} until the session is garbage
+ * collected.
+ * Client certificates are still X.509 certificates.</p>
+ * <p>Handshakes started after {@link #uninstall(SSLSessionContext)}
+ * neither offer nor send raw public keys.</p>
+ */
+public final class RawPublicKeys
+{
+    private static final WeakIdentityMap<SSLSessionContext, RawPublicKeys> installed = new WeakIdentityMap<>();
+    private static final WeakIdentityMap<SSLSession, PublicKey> peerPublicKeys = new WeakIdentityMap<>();
+
+    private final PublicKeyVerifier verifier;
+    private final LongAdder uses = new LongAdder();
+
+    /**
+     * @param verifier the verifier of the server public keys, or null on servers
+     */
+    public RawPublicKeys(PublicKeyVerifier verifier)
+    {
+        this.verifier = verifier;
+    }
+
+    /**
+     * @param context the client or server session context of a {@code SSLContext}
+     * @param rawPublicKeys the raw public keys configuration for the handshakes of the context
+     */
+    public static void install(SSLSessionContext context, RawPublicKeys rawPublicKeys)
+    {
+        installed.put(context, rawPublicKeys);
+    }
+
+    /**
+     * @param context the client or server session context of a {@code SSLContext}
+     * @return the configuration installed on the context, or null if none is installed
+     */
+    public static RawPublicKeys get(SSLSessionContext context)
+    {
+        return installed.get(context);
+    }
+
+    /**
+     * @param context the client or server session context of a {@code SSLContext}
+     * @return the configuration that was installed on the context, or null if none was installed
+     */
+    public static RawPublicKeys uninstall(SSLSessionContext context)
+    {
+        return installed.remove(context);
+    }
+
+    /**
+     * @param session a client session
+     * @return the raw public key the server authenticated with, or null if the server sent certificates
+     */
+    public static PublicKey getPeerPublicKey(SSLSession session)
+    {
+        return peerPublicKeys.get(session);
+    }
+
+    /**
+     * @return the verifier of the server public keys, or null
+     */
+    public PublicKeyVerifier getVerifier()
+    {
+        return verifier;
+    }
+
+    /**
+     * @return the number of handshakes that used a raw public key
+     */
+    public long getUses()
+    {
+        return uses.longValue();
+    }
+
+    void used()
+    {
+        uses.increment();
+    }
+
+    static void peerPublicKey(SSLSession session, PublicKey publicKey)
+    {
+        if (publicKey == null)
+            peerPublicKeys.remove(session);
+        else
+            peerPublicKeys.put(session, publicKey);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,uses=%d]", getClass().getSimpleName(), hashCode(), verifier, getUses());
+    }
+}
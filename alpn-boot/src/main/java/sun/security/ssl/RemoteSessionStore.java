@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>The asynchronous client of a session store shared by the servers of a
+ * cluster, for example a remote key-value store, used by
+ * {@link DistributedSessionStore}.</p>
+ * <p>Session ids and values are opaque bytes; the values are encrypted by
+ * {@link DistributedSessionStore} before they are handed to this interface.
+ * Operations work on batches and must not block: they return futures that
+ * are completed when the remote store replies.</p>
+ */
+public interface RemoteSessionStore
+{
+    /**
+     * @param sessionIds the session ids to look up
+     * @return a future completed with the values of the sessions, in the
+     * same order as the session ids, with null for the sessions not found
+     */
+    CompletableFuture<List<byte[]>> getAll(List<byte[]> sessionIds);
+
+    /**
+     * @param sessionIds the session ids to store
+     * @param values the values of the sessions, in the same order as the session ids
+     * @return a future completed when the values are stored
+     */
+    CompletableFuture<Void> putAll(List<byte[]> sessionIds, List<byte[]> values);
+
+    /**
+     * @param sessionIds the session ids to remove
+     * @return a future completed when the sessions are removed
+     */
+    CompletableFuture<Void> removeAll(List<byte[]> sessionIds);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import javax.net.ssl.SSLException;
+
+import org.eclipse.jetty.alpn.ALPN;
+
+/**
+ * <p>A {@link ALPN.ClientProvider} notified when the server resumes a
+ * session with the application protocol negotiated for the session.</p>
+ * <p>In that case {@link #resumed(String)} is called instead of
+ * {@code selected()}; when the server selects another protocol,
+ * {@code selected()} is called as for a full handshake.</p>
+ */
+public interface ResumingClientProvider extends ALPN.ClientProvider
+{
+    /**
+     * <p>Called instead of {@code selected()} when the protocol is the one of the resumed session.</p>
+     *
+     * @param protocol the protocol of the resumed session
+     * @throws SSLException if the protocol cannot be used for the connection
+     */
+    void resumed(String protocol) throws SSLException;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import javax.net.ssl.SSLException;
+
+import org.eclipse.jetty.alpn.ALPN;
+
+/**
+ * <p>A {@link ALPN.ServerProvider} that keeps the application protocol of
+ * resumed sessions.</p>
+ * <p>When a client resumes a session and offers again the protocol
+ * negotiated for the session, the server selects that protocol without
+ * calling {@code select()}, and calls {@link #resumed(String)} instead, so
+ * that the protocol of a session, for example HTTP/2, never changes across
+ * resumptions.
+ * Otherwise {@code select()} is called as for a full handshake.</p>
+ */
+public interface ResumingServerProvider extends ALPN.ServerProvider
+{
+    /**
+     * <p>Called instead of {@code select()} when the protocol is the one of the resumed session.</p>
+     *
+     * @param protocol the protocol of the resumed session
+     * @throws SSLException if the protocol cannot be used for the connection
+     */
+    void resumed(String protocol) throws SSLException;
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSessionContext;
+import javax.security.auth.x500.X500Principal;
+
+import org.eclipse.jetty.alpn.ALPN;
+import sun.security.util.Cache;
+
+/**
+ * <p>A client cache of the revocation status of server certificates,
+ * keyed by issuer and serial number, so that connections to the same
+ * servers do not check the revocation status of their certificate again.</p>
+ * <p>Once the cache is installed on the client session context of a
+ * {@code SSLContext}, client handshakes check the server certificate
+ * against the cache after the trust manager trusted it, and fail with a
+ * certificate_revoked alert if the certificate is revoked.
+ * The status is obtained from a {@link Checker}, for example
+ * {@link OCSPChecker}, and kept until the next update of the status, or
+ * at most {@code maxAge}.
+ * Statuses about to expire are refreshed in the background, so that
+ * clients that reconnect regularly never wait for a revocation check.</p>
+ * <p>In non blocking mode, a handshake that finds no status in the cache
+ * does not wait: the status is checked in the background, and the
+ * handshake proceeds as if the certificate was not revoked.
+ * In blocking mode, such a handshake waits for the status, and fails if
+ * the certificate is revoked.</p>
+ * <pre>
+ * RevocationCache cache = new RevocationCache(new OCSPChecker(), 1024, TimeUnit.HOURS.toMillis(1), true);
+ * RevocationCache.install(sslContext.getClientSessionContext(), cache);
+ * </pre>
+ * <p>Client handshakes ask servers to staple the OCSP response of their
+ * certificate with the status_request extension; a stapled response
+ * signed by the issuer of the certificate, or by a responder delegated by
+ * the issuer, is recorded in the cache before the certificate is checked,
+ * so that it does not need to be checked again.</p>
+ * <p>The issuer of the server certificate is looked up by name in the
+ * chain sent by the server, then among the issuers accepted by the trust
+ * manager, and must have signed the certificate; the revocation status of
+ * a certificate whose issuer is not found is not checked.</p>
+ * <p>Uninstalling the cache does not stop the background checks already
+ * scheduled; {@link #close()} does.</p>
+ */
+public class RevocationCache implements Closeable
+{
+    private static final WeakIdentityMap<SSLSessionContext, RevocationCache> caches = new WeakIdentityMap<>();
+
+    private final Checker checker;
+    private final Cache<Key, Entry> cache;
+    private final long maxAge;
+    private final boolean blocking;
+    private final ExecutorService executor;
+    private final ConcurrentMap<Key, Boolean> pending = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param checker the checker of the revocation status
+     * @param size the maximum number of certificates in the cache
+     * @param maxAge the maximum time in milliseconds a status is kept
+     * @param blocking whether handshakes wait for the status of certificates not in the cache
+     */
+    public RevocationCache(Checker checker, int size, long maxAge, boolean blocking)
+    {
+        if (maxAge <= 0)
+            throw new IllegalArgumentException("Invalid max age " + maxAge);
+        this.checker = checker;
+        this.cache = Cache.newHardMemoryCache(size);
+        this.maxAge = maxAge;
+        this.blocking = blocking;
+        this.executor = Executors.newSingleThreadExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "RevocationCache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * <p>Installs a cache on a client session context.</p>
+     *
+     * @param context the client session context of a {@code SSLContext}
+     * @param cache the cache for the client handshakes of the context
+     */
+    public static void install(SSLSessionContext context, RevocationCache cache)
+    {
+        caches.put(context, cache);
+    }
+
+    /**
+     * @param context the client session context of a {@code SSLContext}
+     * @return the cache installed on the context, or null if no cache is installed
+     */
+    public static RevocationCache get(SSLSessionContext context)
+    {
+        return caches.get(context);
+    }
+
+    /**
+     * <p>Removes the cache installed on a client session context.</p>
+     *
+     * @param context the client session context of a {@code SSLContext}
+     * @return the cache that was installed on the context, or null if no cache was installed
+     */
+    public static RevocationCache uninstall(SSLSessionContext context)
+    {
+        return caches.remove(context);
+    }
+
+    /**
+     * @param certificate the certificate
+     * @param candidates the certificates that may have issued the certificate, in order of preference
+     * @return the first candidate named as the issuer of the certificate that signed it, or null if none did
+     */
+    public static X509Certificate findIssuer(X509Certificate certificate, X509Certificate... candidates)
+    {
+        if (candidates == null)
+            return null;
+        X500Principal issuer = certificate.getIssuerX500Principal();
+        for (X509Certificate candidate : candidates)
+        {
+            if (candidate == null || candidate.equals(certificate) || !issuer.equals(candidate.getSubjectX500Principal()))
+                continue;
+            try
+            {
+                certificate.verify(candidate.getPublicKey());
+                return candidate;
+            }
+            catch (GeneralSecurityException x)
+            {
+                // Same name, different key: try the next candidate.
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param certificate the certificate
+     * @param issuer the issuer of the certificate
+     * @return the revocation status of the certificate; {@link Status#UNKNOWN}
+     * if the status is not known yet in non blocking mode
+     */
+    public Status check(X509Certificate certificate, X509Certificate issuer)
+    {
+        Key key = new Key(issuer.getSubjectX500Principal(), certificate.getSerialNumber());
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null && now < entry.expiry)
+        {
+            hits.increment();
+            // Refresh in the background during the last quarter of the lifetime.
+            if (now > entry.expiry - (entry.expiry - entry.created) / 4)
+                refresh(key, certificate, issuer);
+            return entry.status;
+        }
+        misses.increment();
+        if (!blocking)
+        {
+            refresh(key, certificate, issuer);
+            return Status.UNKNOWN;
+        }
+        entry = fetch(key, certificate, issuer);
+        return entry == null ? Status.UNKNOWN : entry.status;
+    }
+
+    private void refresh(Key key, X509Certificate certificate, X509Certificate issuer)
+    {
+        if (pending.putIfAbsent(key, Boolean.TRUE) != null)
+            return;
+        executor.execute(() ->
+        {
+            try
+            {
+                fetch(key, certificate, issuer);
+            }
+            finally
+            {
+                pending.remove(key);
+            }
+        });
+    }
+
+    private Entry fetch(Key key, X509Certificate certificate, X509Certificate issuer)
+    {
+        try
+        {
+            Result result = checker.check(certificate, issuer);
+            if (ALPN.debug)
+                System.err.println("[C] Revocation status " + result.status + " for " + certificate.getSubjectX500Principal());
+            return store(key, result);
+        }
+        catch (IOException | RuntimeException x)
+        {
+            if (ALPN.debug)
+                System.err.println("[C] Could not check revocation status for " + certificate.getSubjectX500Principal() + ": " + x);
+            return null;
+        }
+    }
+
+    /**
+     * <p>Records the status of a certificate from an OCSP response
+     * stapled by the server, already verified by the handshake.</p>
+     */
+    void stapled(X509Certificate certificate, X509Certificate issuer, Result result)
+    {
+        if (ALPN.debug)
+            System.err.println("[C] Stapled revocation status " + result.status + " for " + certificate.getSubjectX500Principal());
+        store(new Key(issuer.getSubjectX500Principal(), certificate.getSerialNumber()), result);
+    }
+
+    private Entry store(Key key, Result result)
+    {
+        if (result.status == Status.UNKNOWN)
+            return null;
+        long now = System.currentTimeMillis();
+        long expiry = now + maxAge;
+        if (result.nextUpdate > 0)
+            expiry = Math.min(expiry, result.nextUpdate);
+        Entry entry = new Entry(result.status, now, expiry);
+        cache.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * <p>Removes all the statuses of the cache.</p>
+     */
+    public void invalidate()
+    {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of checks that found the status in the cache
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of checks that did not find the status in the cache
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * <p>Stops the background checks.</p>
+     */
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,size=%d,blocking=%b]", getClass().getSimpleName(), hashCode(), checker, cache.size(), blocking);
+    }
+
+    /**
+     * <p>The revocation status of a certificate.</p>
+     */
+    public enum Status
+    {
+        GOOD, REVOKED, UNKNOWN
+    }
+
+    /**
+     * <p>The result of a revocation check.</p>
+     */
+    public static class Result
+    {
+        private final Status status;
+        private final long nextUpdate;
+
+        /**
+         * @param status the revocation status
+         * @param nextUpdate the time in milliseconds since the epoch of the next update of the status, or 0 if unknown
+         */
+        public Result(Status status, long nextUpdate)
+        {
+            this.status = Objects.requireNonNull(status);
+            this.nextUpdate = nextUpdate;
+        }
+
+        public Status getStatus()
+        {
+            return status;
+        }
+
+        public long getNextUpdate()
+        {
+            return nextUpdate;
+        }
+    }
+
+    /**
+     * <p>Checks the revocation status of a certificate.</p>
+     */
+    public interface Checker
+    {
+        /**
+         * <p>Called from a handshake in blocking mode, otherwise from a background thread.</p>
+         *
+         * @param certificate the certificate
+         * @param issuer the issuer of the certificate
+         * @return the revocation status of the certificate
+         * @throws IOException if the status cannot be checked
+         */
+        Result check(X509Certificate certificate, X509Certificate issuer) throws IOException;
+    }
+
+    private static class Key
+    {
+        private final X500Principal issuer;
+        private final BigInteger serialNumber;
+
+        private Key(X500Principal issuer, BigInteger serialNumber)
+        {
+            this.issuer = issuer;
+            this.serialNumber = serialNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key that = (Key)obj;
+            return serialNumber.equals(that.serialNumber) && issuer.equals(that.issuer);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * issuer.hashCode() + serialNumber.hashCode();
+        }
+    }
+
+    private static class Entry
+    {
+        private final Status status;
+        private final long created;
+        private final long expiry;
+
+        private Entry(Status status, long created, long expiry)
+        {
+            this.status = status;
+            this.created = created;
+            this.expiry = expiry;
+        }
+    }
+}
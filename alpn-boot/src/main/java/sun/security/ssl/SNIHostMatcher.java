@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIMatcher;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.StandardConstants;
+
+/**
+ * <p>A {@link SNIMatcher} for host names that matches in constant time
+ * against a large set of virtual hosts.</p>
+ * <p>{@link SNIHostName#createSNIMatcher(String)} compiles a regular expression
+ * that must enumerate every host as an alternative, so the cost of a match
+ * grows with the number of hosts.
+ * This matcher instead indexes the host names in hash sets: exact host names
+ * such as {@code www.example.com}, and wildcard host names such as
+ * {@code *.example.com} that match exactly one label, as specified by RFC 6125.
+ * A match is at most two hash lookups, whatever the number of hosts.</p>
+ * <p>Host names are compared case insensitively, in their ASCII form.</p>
+ * <p>The server handshake already asks the SNI matchers of the
+ * {@code SSLParameters} of the connection whether it serves the server
+ * name requested by the client, calling each matcher once for the name of
+ * its type; with this matcher as the only host name matcher, that check is
+ * constant time, so the handshake itself needs no change.</p>
+ * <pre>
+ * SSLParameters parameters = sslEngine.getSSLParameters();
+ * parameters.setSNIMatchers(Collections.singletonList(new SNIHostMatcher(hostNames)));
+ * sslEngine.setSSLParameters(parameters);
+ * </pre>
+ */
+public final class SNIHostMatcher extends SNIMatcher
+{
+    private final Set<String> hosts = new HashSet<>();
+    private final Set<String> wildcardDomains = new HashSet<>();
+
+    /**
+     * @param hostNames the host names to match, possibly wildcard host names
+     * such as {@code *.example.com}
+     * @throws IllegalArgumentException if a host name is not valid
+     */
+    public SNIHostMatcher(Collection<String> hostNames)
+    {
+        super(StandardConstants.SNI_HOST_NAME);
+        for (String hostName : hostNames)
+        {
+            if (hostName.startsWith("*."))
+                wildcardDomains.add(normalize(new SNIHostName(hostName.substring(2)).getAsciiName()));
+            else
+                hosts.add(normalize(new SNIHostName(hostName).getAsciiName()));
+        }
+    }
+
+    @Override
+    public boolean matches(SNIServerName serverName)
+    {
+        if (serverName == null || serverName.getType() != StandardConstants.SNI_HOST_NAME)
+            return false;
+        String host;
+        if (serverName instanceof SNIHostName)
+        {
+            host = ((SNIHostName)serverName).getAsciiName();
+        }
+        else
+        {
+            try
+            {
+                host = new SNIHostName(serverName.getEncoded()).getAsciiName();
+            }
+            catch (IllegalArgumentException x)
+            {
+                return false;
+            }
+        }
+        return matches(host);
+    }
+
+    /**
+     * @param host the host name in ASCII form
+     * @return whether the host name matches one of the host names of this matcher
+     */
+    public boolean matches(String host)
+    {
+        host = normalize(host);
+        if (hosts.contains(host))
+            return true;
+        int dot = host.indexOf('.');
+        return dot > 0 && wildcardDomains.contains(host.substring(dot + 1));
+    }
+
+    /**
+     * @return the number of host names of this matcher
+     */
+    public int size()
+    {
+        return hosts.size() + wildcardDomains.size();
+    }
+
+    private static String normalize(String host)
+    {
+        // Avoid allocating when the host is already in lower case, which is the common case.
+        for (int i = 0; i < host.length(); ++i)
+        {
+            char c = host.charAt(i);
+            if (c >= 'A' && c <= 'Z')
+                return host.toLowerCase(Locale.ENGLISH);
+        }
+        return host;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[hosts=%d,wildcards=%d]", getClass().getSimpleName(), hashCode(), hosts.size(), wildcardDomains.size());
+    }
+}
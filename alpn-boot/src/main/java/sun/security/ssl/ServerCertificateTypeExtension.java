@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+
+import javax.net.ssl.SSLProtocolException;
+
+/**
+ * <p>The server_certificate_type extension, see RFC 7250.</p>
+ * <p>In the ClientHello, the extension lists the types of server
+ * certificates that the client can process, by order of preference; in the
+ * ServerHello, it carries the type of the server certificate.</p>
+ */
+public class ServerCertificateTypeExtension extends HelloExtension
+{
+    public static final int TYPE_X509 = 0;
+    public static final int TYPE_RAW_PUBLIC_KEY = 2;
+
+    private static final int ID = ExtensionType.EXT_SERVER_CERTIFICATE_TYPE.id;
+
+    // The list of types sent by clients, or the single type sent by servers.
+    private final byte[] data;
+
+    /**
+     * <p>Creates the extension of a ClientHello.</p>
+     *
+     * @param types the certificate types, by order of preference
+     */
+    public ServerCertificateTypeExtension(int[] types)
+    {
+        super(ExtensionType.get(ID));
+        data = new byte[1 + types.length];
+        data[0] = (byte)types.length;
+        for (int i = 0; i < types.length; ++i)
+            data[1 + i] = (byte)types[i];
+    }
+
+    /**
+     * <p>Creates the extension of a ServerHello.</p>
+     *
+     * @param type the certificate type
+     */
+    public ServerCertificateTypeExtension(int type)
+    {
+        super(ExtensionType.get(ID));
+        data = new byte[]{(byte)type};
+    }
+
+    public ServerCertificateTypeExtension(HandshakeInStream input, int length) throws IOException
+    {
+        super(ExtensionType.get(ID));
+        if (length < 1)
+            throw new SSLProtocolException("Invalid " + type + " extension");
+        data = new byte[length];
+        input.read(data, 0, length);
+        if (length > 1 && (data[0] & 0xFF) != length - 1)
+            throw new SSLProtocolException("Invalid " + type + " extension");
+    }
+
+    /**
+     * @param certificateType a certificate type
+     * @return whether the client lists the given type, in a ClientHello
+     */
+    public boolean contains(int certificateType)
+    {
+        for (int i = 1; i < data.length; ++i)
+        {
+            if ((data[i] & 0xFF) == certificateType)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the certificate type, in a ServerHello, or -1 if the extension is a list
+     */
+    public int getCertificateType()
+    {
+        return data.length == 1 ? data[0] & 0xFF : -1;
+    }
+
+    @Override
+    int length()
+    {
+        return 2 + 2 + data.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream out) throws IOException
+    {
+        out.putInt16(ID);
+        out.putInt16(data.length);
+        out.write(data, 0, data.length);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder("Extension ").append(type).append(", types: ");
+        for (int i = data.length == 1 ? 0 : 1; i < data.length; ++i)
+        {
+            if (builder.charAt(builder.length() - 1) != ' ')
+                builder.append(',');
+            builder.append(data[i] & 0xFF);
+        }
+        return builder.toString();
+    }
+}
@@ -50,6 +50,8 @@ import sun.security.ssl.SignatureAndHashAlgorithm.*;
 import static sun.security.ssl.CipherSuite.KeyExchange.*;
 
 // ALPN_CHANGES_BEGIN
+import javax.crypto.spec.DHParameterSpec;
+
 import org.eclipse.jetty.alpn.ALPN;
 // ALPN_CHANGES_END
 
@@ -69,6 +71,21 @@ final class ServerHandshaker extends Handshaker {
     // our authentication info
     private X509Certificate[]   certs;
     private PrivateKey          privateKey;
+    // ALPN_CHANGES_BEGIN
+    private ServerKeyCache.Entry keyCacheEntry;
+    // the application protocol selected via ALPN, stored with the session
+    private String alpnProtocol;
+    // the application protocol stored with the session the client asked to resume
+    private String resumedAlpnProtocol;
+    // the OCSP response stapled after the server Certificate message
+    private byte[] stapledResponse;
+    // whether the ServerHello announced a NewSessionTicket message
+    private boolean sendSessionTicket;
+    // the hash sent instead of the server certificate chain cached by the client
+    private byte[] cachedCertificateHash;
+    // whether the server sends its raw public key instead of its certificate chain
+    private boolean sendRawPublicKey;
+    // ALPN_CHANGES_END
 
     private Object              serviceCreds;
 
@@ -567,12 +584,13 @@ final class ServerHandshaker extends Handshaker {
         // the client's asked to rejoin an existing session, and the server
         // permits this; (b) the other one, where a new session is created.
         //
-        if (mesg.sessionId.length() != 0) {
+        // ALPN_CHANGES_BEGIN
+        // With session tickets, the session ID may be empty, see RFC 5077.
+        SSLSessionImpl previous = findResumableSession(mesg);
+        if (previous != null) {
+        // ALPN_CHANGES_END
             // client is trying to resume a session, let's see...
 
-            SSLSessionImpl previous = ((SSLSessionContextImpl)sslContext
-                        .engineGetServerSessionContext())
-                        .get(mesg.sessionId.getId());
             //
             // Check if we can use the fast path, resuming a session.  We
             // can do so iff we have a valid record for that session, and
@@ -862,6 +880,25 @@ final class ServerHandshaker extends Handshaker {
             m1.extensions.add(new ExtendedMasterSecretExtension());
         }
 
+        // ALPN_CHANGES_BEGIN
+        // The client may offer an empty SessionTicket extension to get a ticket.
+        sendSessionTicket = !resumingSession &&
+                mesg.extensions.get(ExtensionType.EXT_SESSION_TICKET) != null &&
+                SessionTickets.get(sslContext.engineGetServerSessionContext()) != null;
+        if (sendSessionTicket)
+            m1.extensions.add(new SessionTicketExtension());
+        sendRawPublicKey = !resumingSession && acceptRawPublicKey(mesg);
+        if (sendRawPublicKey)
+            m1.extensions.add(new ServerCertificateTypeExtension(ServerCertificateTypeExtension.TYPE_RAW_PUBLIC_KEY));
+        // A raw public key has no certificate to staple a status for.
+        stapledResponse = resumingSession || sendRawPublicKey ? null : findStapledResponse(mesg);
+        if (stapledResponse != null)
+            m1.extensions.add(new CertStatusRequestExtension());
+        cachedCertificateHash = resumingSession || sendRawPublicKey ? null : acceptCachedInfo(mesg);
+        if (cachedCertificateHash != null)
+            m1.extensions.add(new CachedInfoExtension());
+        // ALPN_CHANGES_END
+
         if (debug != null && Debug.isOn("handshake")) {
             m1.print(System.out);
             System.out.println("Cipher suite:  " + session.getSuite());
@@ -882,12 +919,41 @@ final class ServerHandshaker extends Handshaker {
                         System.err.println("[S] ALPN protocols " + protocols + " received from client for " + ssl);
                     try
                     {
-                        String protocol = provider.select(protocols);
+                        String protocol;
+                        String resumedProtocol = resumingSession ? resumedAlpnProtocol : null;
+                        if (provider instanceof ResumingServerProvider && resumedProtocol != null && protocols.contains(resumedProtocol))
+                        {
+                            protocol = resumedProtocol;
+                            if (ALPN.debug)
+                                System.err.println("[S] ALPN protocol '" + protocol + "' resumed for " + ssl);
+                            ((ResumingServerProvider)provider).resumed(protocol);
+                        }
+                        else if (provider instanceof CipherSuiteServerProvider)
+                        {
+                            CipherSuiteServerProvider cipherSuiteProvider = (CipherSuiteServerProvider)provider;
+                            protocols = alpnPermitted(cipherSuiteProvider, protocols, cipherSuite);
+                            if (ALPN.debug)
+                                System.err.println("[S] ALPN protocols " + protocols + " permitted with " + cipherSuite.name + " for " + ssl);
+                            if (provider instanceof ClientHelloServerProvider)
+                                protocol = ((ClientHelloServerProvider)provider).select(new ClientHelloView(mesg, cipherSuite), protocols);
+                            else
+                                protocol = cipherSuiteProvider.select(protocols, cipherSuite.name);
+                        }
+                        else if (provider instanceof ClientHelloServerProvider)
+                        {
+                            protocol = ((ClientHelloServerProvider)provider).select(new ClientHelloView(mesg, cipherSuite), protocols);
+                        }
+                        else
+                        {
+                            protocol = provider.select(protocols);
+                        }
                         if (ALPN.debug)
                             System.err.println("[S] ALPN protocol '" + protocol + "' selected for " + ssl);
                         if (protocol != null)
                         {
                             m1.extensions.add(new ALPNExtension(Arrays.asList(protocol)));
+                            alpnProtocol = protocol;
+                            ApplicationProtocols.put(session, protocol);
                         }
                         else
                         {
@@ -904,7 +970,10 @@ final class ServerHandshaker extends Handshaker {
                 {
                     if (ALPN.debug)
                         System.err.println("[S] ALPN not received for " + ssl);
-                    provider.unsupported();
+                    if (provider instanceof ClientHelloServerProvider)
+                        ((ClientHelloServerProvider)provider).unsupported(new ClientHelloView(mesg, cipherSuite));
+                    else
+                        provider.unsupported();
                 }
             }
             else
@@ -945,7 +1014,17 @@ final class ServerHandshaker extends Handshaker {
                 throw new RuntimeException("no certificates");
             }
 
-            CertificateMsg m2 = new CertificateMsg(certs);
+            // ALPN_CHANGES_BEGIN
+            HandshakeMessage m2;
+            if (sendRawPublicKey)
+                m2 = new RawPublicKeyMsg(certs[0].getPublicKey());
+            else if (cachedCertificateHash != null)
+                m2 = new CachedCertificateMsg(cachedCertificateHash);
+            else if (keyCacheEntry != null && keyCacheEntry.certs == certs)
+                m2 = keyCacheEntry.getCertificateMessage();
+            else
+                m2 = new CertificateMsg(certs);
+            // ALPN_CHANGES_END
 
             /*
              * Set local certs in the SSLSession, output
@@ -958,6 +1037,17 @@ final class ServerHandshaker extends Handshaker {
             m2.write(output);
             handshakeState.update(m2, resumingSession);
 
+            // ALPN_CHANGES_BEGIN
+            if (stapledResponse != null)
+            {
+                CertificateStatusMsg status = new CertificateStatusMsg(stapledResponse);
+                if (debug != null && Debug.isOn("handshake"))
+                    status.print(System.out);
+                status.write(output);
+                handshakeState.update(status, resumingSession);
+            }
+            // ALPN_CHANGES_END
+
             // XXX has some side effects with OS TCP buffering,
             // leave it out for now
 
@@ -1141,6 +1231,21 @@ final class ServerHandshaker extends Handshaker {
         }
 
         List<CipherSuite> legacySuites = new ArrayList<>();
+        // ALPN_CHANGES_BEGIN
+        CipherSuiteServerProvider alpnProvider = null;
+        List<String> alpnProtocols = null;
+        if (isInitialHandshake)
+        {
+            ALPN.Provider provider = conn != null ? ALPN.get(conn) : ALPN.get(engine);
+            ALPNExtension extension = (ALPNExtension)mesg.extensions.get(ExtensionType.EXT_ALPN);
+            if (provider instanceof CipherSuiteServerProvider && extension != null)
+            {
+                alpnProvider = (CipherSuiteServerProvider)provider;
+                alpnProtocols = extension.getProtocols();
+            }
+        }
+        List<CipherSuite> alpnDeferredSuites = new ArrayList<>();
+        // ALPN_CHANGES_END
         for (CipherSuite suite : prefered.collection()) {
             if (isNegotiable(proposed, suite) == false) {
                 continue;
@@ -1158,6 +1263,14 @@ final class ServerHandshaker extends Handshaker {
                 continue;
             }
 
+            // ALPN_CHANGES_BEGIN
+            if (alpnProvider != null && !alpnPermitsAll(alpnProvider, alpnProtocols, suite))
+            {
+                alpnDeferredSuites.add(suite);
+                continue;
+            }
+            // ALPN_CHANGES_END
+
             if (trySetCipherSuite(suite) == false) {
                 continue;
             }
@@ -1168,6 +1281,18 @@ final class ServerHandshaker extends Handshaker {
             return;
         }
 
+        // ALPN_CHANGES_BEGIN
+        for (CipherSuite suite : alpnDeferredSuites)
+        {
+            if (trySetCipherSuite(suite))
+            {
+                if (debug != null && Debug.isOn("handshake"))
+                    System.out.println("ALPN restricted ciphersuite chosen: " + suite);
+                return;
+            }
+        }
+        // ALPN_CHANGES_END
+
         for (CipherSuite suite : legacySuites) {
             if (trySetCipherSuite(suite)) {
                 if (debug != null && Debug.isOn("handshake")) {
@@ -1180,6 +1305,192 @@ final class ServerHandshaker extends Handshaker {
         fatalSE(Alerts.alert_handshake_failure, "no cipher suites in common");
     }
 
+    // ALPN_CHANGES_BEGIN
+    private SSLSessionImpl findResumableSession(ClientHello mesg)
+    {
+        byte[] sessionId = mesg.sessionId.getId();
+        SSLSessionContextImpl context = (SSLSessionContextImpl)sslContext.engineGetServerSessionContext();
+        resumedAlpnProtocol = null;
+        if (sessionId.length == 0)
+            return findTicketSession(mesg, context);
+        ShardedSessionCache cache = ShardedSessionCache.get(context);
+        SSLSessionImpl previous;
+        if (cache == null)
+        {
+            previous = context.get(sessionId);
+            resumedAlpnProtocol = previous == null ? null : ApplicationProtocols.get(previous);
+        }
+        else
+        {
+            ShardedSessionCache.Entry entry = cache.get(context, sessionId);
+            previous = entry == null ? null : entry.session;
+            resumedAlpnProtocol = entry == null ? null : entry.applicationProtocol;
+        }
+        if (previous == null)
+            previous = findStoredSession(mesg, context);
+        if (previous == null)
+            previous = findTicketSession(mesg, context);
+        return previous;
+    }
+
+    private SSLSessionImpl findStoredSession(ClientHello mesg, SSLSessionContextImpl context)
+    {
+        SessionStore store = SessionStores.get(context);
+        if (store == null)
+            return null;
+        SessionStores.Entry tracked = SessionStores.tracked(context, mesg.sessionId.getId());
+        if (tracked == SessionStores.Entry.INVALIDATED)
+        {
+            // Never resume a session invalidated on this server.
+            if (ALPN.debug)
+                System.err.println("[S] Session invalidated, removed from session store " + store);
+            return null;
+        }
+        // Ask the store even for tracked sessions, since
+        // another server sharing the store may have removed it.
+        SessionState state = store.get(mesg.sessionId.getId());
+        if (state == null || state.isExpired(context.getSessionTimeout()))
+            return null;
+        if (tracked != null)
+        {
+            resumedAlpnProtocol = tracked.applicationProtocol;
+            return tracked.session;
+        }
+        if (ALPN.debug)
+            System.err.println("[S] Resuming " + state + " from session store " + store);
+        SSLSessionImpl session = restoreSession(mesg, state);
+        SessionStores.restored(context, session, resumedAlpnProtocol);
+        return session;
+    }
+
+    private SSLSessionImpl findTicketSession(ClientHello mesg, SSLSessionContextImpl context)
+    {
+        SessionTicketExtension extension = (SessionTicketExtension)mesg.extensions.get(ExtensionType.EXT_SESSION_TICKET);
+        if (extension == null || extension.getTicket().length == 0)
+            return null;
+        SessionTicketKeyProvider provider = SessionTickets.get(context);
+        if (provider == null)
+            return null;
+        SessionState state = SessionTickets.open(extension.getTicket(), provider);
+        if (state == null || state.isExpired(context.getSessionTimeout()))
+            return null;
+        if (ALPN.debug)
+            System.err.println("[S] Resuming " + state + " from session ticket");
+        return restoreSession(mesg, state);
+    }
+
+    private SSLSessionImpl restoreSession(ClientHello mesg, SessionState state)
+    {
+        SSLSessionImpl session = state.toSession(mesg.sessionId, getLocalSupportedSignAlgs(),
+                getHostAddressSE(), getPortSE(), getEndpointIdentificationAlgorithmSE());
+        resumedAlpnProtocol = state.getApplicationProtocol();
+        ApplicationProtocols.put(session, resumedAlpnProtocol);
+        return session;
+    }
+
+    private byte[] findStapledResponse(ClientHello mesg)
+    {
+        CertStatusRequestExtension extension = (CertStatusRequestExtension)mesg.extensions.get(ExtensionType.EXT_STATUS_REQUEST);
+        if (extension == null || extension.getStatusType() != CertStatusRequestExtension.STATUS_TYPE_OCSP)
+            return null;
+        OCSPStapler stapler = OCSPStapler.get(sslContext.engineGetServerSessionContext());
+        if (stapler == null)
+            return null;
+        byte[] response = stapler.staple(certs);
+        if (ALPN.debug)
+            System.err.println("[S] OCSP response " + (response == null ? "not available" : "stapled") + " for " + (conn != null ? conn : engine));
+        return response;
+    }
+
+    private void sendNewSessionTicket() throws IOException
+    {
+        SSLSessionContextImpl context = (SSLSessionContextImpl)sslContext.engineGetServerSessionContext();
+        SessionTicketKeyProvider provider = SessionTickets.get(context);
+        byte[] ticket = provider == null ? null : SessionTickets.seal(session, alpnProtocol, provider);
+        // Having announced a ticket in the ServerHello, an empty ticket must be sent if none can be issued.
+        NewSessionTicketMsg message = new NewSessionTicketMsg(context.getSessionTimeout(), ticket == null ? new byte[0] : ticket);
+        if (debug != null && Debug.isOn("handshake"))
+            message.print(System.out);
+        message.write(output);
+    }
+
+    private void storeResumableSession(SSLSessionImpl session)
+    {
+        SSLSessionContextImpl context = (SSLSessionContextImpl)sslContext.engineGetServerSessionContext();
+        ShardedSessionCache cache = ShardedSessionCache.get(context);
+        if (cache == null)
+            context.put(session);
+        else
+            cache.put(context, session, alpnProtocol);
+        SessionStores.put(context, session, alpnProtocol);
+    }
+
+    private AlgorithmConstraints getUserAlgorithmConstraintsSE()
+    {
+        SSLParameters parameters = conn != null ? conn.getSSLParameters() : engine.getSSLParameters();
+        return parameters.getAlgorithmConstraints();
+    }
+
+    private boolean alpnPermits(CipherSuiteServerProvider provider, String protocol, CipherSuite suite)
+    {
+        if (HTTP2Cipher.PROTOCOL.equals(protocol) && !HTTP2Cipher.isPermitted(protocolVersion, suite))
+            return false;
+        return provider.permits(protocol, suite.name);
+    }
+
+    private boolean alpnPermitsAll(CipherSuiteServerProvider provider, List<String> protocols, CipherSuite suite)
+    {
+        for (String protocol : protocols)
+        {
+            if (!alpnPermits(provider, protocol, suite))
+                return false;
+        }
+        return true;
+    }
+
+    private List<String> alpnPermitted(CipherSuiteServerProvider provider, List<String> protocols, CipherSuite suite)
+    {
+        List<String> result = new ArrayList<>(protocols.size());
+        for (String protocol : protocols)
+        {
+            if (alpnPermits(provider, protocol, suite))
+                result.add(protocol);
+        }
+        return result;
+    }
+
+    private boolean acceptRawPublicKey(ClientHello mesg)
+    {
+        ServerCertificateTypeExtension extension = (ServerCertificateTypeExtension)mesg.extensions.get(ExtensionType.EXT_SERVER_CERTIFICATE_TYPE);
+        if (extension == null || certs == null)
+            return false;
+        RawPublicKeys rawPublicKeys = RawPublicKeys.get(sslContext.engineGetServerSessionContext());
+        if (rawPublicKeys == null || !extension.contains(ServerCertificateTypeExtension.TYPE_RAW_PUBLIC_KEY))
+            return false;
+        if (ALPN.debug)
+            System.err.println("[S] Raw public key sent for " + (conn != null ? conn : engine));
+        rawPublicKeys.used();
+        return true;
+    }
+
+    private byte[] acceptCachedInfo(ClientHello mesg) throws IOException
+    {
+        CachedInfoExtension extension = (CachedInfoExtension)mesg.extensions.get(ExtensionType.EXT_CACHED_INFO);
+        if (extension == null || certs == null)
+            return null;
+        CachedInformation info = CachedInformation.get(sslContext.engineGetServerSessionContext());
+        if (info == null)
+            return null;
+        List<byte[]> hashes = extension.getCertificateHashes();
+        if (hashes.isEmpty())
+            return null;
+        byte[] hash = info.accept(certs, CachedInformation.hashAlgorithm(protocolVersion, cipherSuite), hashes);
+        if (ALPN.debug)
+            System.err.println("[S] Cached certificate chain " + (hash == null ? "miss" : "hit") + " for " + (conn != null ? conn : engine));
+        return hash;
+    }
+    // ALPN_CHANGES_END
+
     /**
      * Set the given CipherSuite, if possible. Return the result.
      * The call succeeds if the CipherSuite is available and we have
@@ -1223,6 +1534,9 @@ final class ServerHandshaker extends Handshaker {
         // null out any existing references
         privateKey = null;
         certs = null;
+        // ALPN_CHANGES_BEGIN
+        keyCacheEntry = null;
+        // ALPN_CHANGES_END
         dh = null;
         tempPrivateKey = null;
         tempPublicKey = null;
@@ -1338,7 +1652,10 @@ final class ServerHandshaker extends Handshaker {
                 }
             }
 
-            setupEphemeralDHKeys(suite.exportable, privateKey);
+            // ALPN_CHANGES_BEGIN
+            if (!setupEphemeralDHKeys(suite.exportable, privateKey))
+                return false;
+            // ALPN_CHANGES_END
             break;
         case K_ECDHE_RSA:
             // need RSA certs for authentication
@@ -1386,7 +1703,10 @@ final class ServerHandshaker extends Handshaker {
                 return false;
             }
 
-            setupEphemeralDHKeys(suite.exportable, privateKey);
+            // ALPN_CHANGES_BEGIN
+            if (!setupEphemeralDHKeys(suite.exportable, privateKey))
+                return false;
+            // ALPN_CHANGES_END
             break;
         case K_ECDHE_ECDSA:
             // get preferable peer signature algorithm for server key exchange
@@ -1435,7 +1755,10 @@ final class ServerHandshaker extends Handshaker {
             break;
         case K_DH_ANON:
             // no certs needed for anonymous
-            setupEphemeralDHKeys(suite.exportable, null);
+            // ALPN_CHANGES_BEGIN
+            if (!setupEphemeralDHKeys(suite.exportable, null))
+                return false;
+            // ALPN_CHANGES_END
             break;
         case K_ECDH_ANON:
             // no certs needed for anonymous
@@ -1485,7 +1808,27 @@ final class ServerHandshaker extends Handshaker {
      * Acquire some "ephemeral" Diffie-Hellman  keys for this handshake.
      * We don't reuse these, for improved forward secrecy.
      */
-    private void setupEphemeralDHKeys(boolean export, Key key) {
+    // ALPN_CHANGES_BEGIN
+    private boolean setupEphemeralDHKeys(boolean export, Key key) {
+        if (!export && requestedCurves != null)
+        {
+            // RFC 7919: negotiate the group with the supported_groups extension.
+            int[] groups = requestedCurves.curveIds();
+            if (FFDHEGroups.isOffered(groups))
+            {
+                int group = FFDHEGroups.select(groups);
+                if (group < 0)
+                {
+                    if (ALPN.debug)
+                        System.err.println("[S] No acceptable FFDHE group for " + (conn != null ? conn : engine));
+                    return false;
+                }
+                DHParameterSpec params = FFDHEGroups.getParameters(group);
+                dh = new DHCrypt(params.getP(), params.getG(), sslContext.getSecureRandom());
+                return true;
+            }
+        }
+    // ALPN_CHANGES_END
         /*
          * 768 bits ephemeral DH private keys were used to be used in
          * ServerKeyExchange except that exportable ciphers max out at 512
@@ -1552,15 +1895,26 @@ final class ServerHandshaker extends Handshaker {
         }
 
         dh = new DHCrypt(keySize, sslContext.getSecureRandom());
+        // ALPN_CHANGES_BEGIN
+        return true;
+        // ALPN_CHANGES_END
     }
 
     // Setup the ephemeral ECDH parameters.
     // If we cannot continue because we do not support any of the curves that
     // the client requested, return false. Otherwise (all is well), return true.
     private boolean setupEphemeralECDHKeys() {
-        int index = (requestedCurves != null) ?
-                requestedCurves.getPreferredCurve(algorithmConstraints) :
-                EllipticCurvesExtension.getActiveCurves(algorithmConstraints);
+        // ALPN_CHANGES_BEGIN
+        CurvePreference preference = CurvePreference.get(sslContext.engineGetServerSessionContext());
+        int index;
+        if (requestedCurves == null)
+            index = EllipticCurvesExtension.getActiveCurves(algorithmConstraints);
+        else if (preference == null)
+            index = requestedCurves.getPreferredCurve(algorithmConstraints);
+        else
+            index = preference.select(requestedCurves, algorithmConstraints,
+                    preference.isCacheEnabled() && getUserAlgorithmConstraintsSE() == null);
+        // ALPN_CHANGES_END
         if (index < 0) {
             // no match found, cannot use this ciphersuite
             return false;
@@ -1584,6 +1938,21 @@ final class ServerHandshaker extends Handshaker {
      */
     private boolean setupPrivateKeyAndChain(String algorithm) {
         X509ExtendedKeyManager km = sslContext.getX509KeyManager();
+        // ALPN_CHANGES_BEGIN
+        ServerKeyCache cache = ServerKeyCache.get(sslContext.engineGetServerSessionContext());
+        ServerKeyCache.Key cacheKey = null;
+        if (cache != null)
+        {
+            cacheKey = new ServerKeyCache.Key(algorithm, session.getRequestedServerNames(), peerSupportedSignAlgs);
+            ServerKeyCache.Entry entry = cache.get(cacheKey);
+            if (entry != null)
+            {
+                if (ALPN.debug)
+                    System.err.println("[S] Cached server key alias " + entry.alias + " for " + algorithm);
+                return setupPrivateKeyAndChain(algorithm, entry);
+            }
+        }
+        // ALPN_CHANGES_END
         String alias;
         if (conn != null) {
             alias = km.chooseServerAlias(algorithm, null, conn);
@@ -1601,6 +1970,27 @@ final class ServerHandshaker extends Handshaker {
         if ((tempCerts == null) || (tempCerts.length == 0)) {
             return false;
         }
+        // ALPN_CHANGES_BEGIN
+        if (cacheKey != null)
+        {
+            ServerKeyCache.Entry entry = new ServerKeyCache.Entry(alias, tempPrivateKey, tempCerts);
+            cache.put(cacheKey, entry);
+            return setupPrivateKeyAndChain(algorithm, entry);
+        }
+        return setupPrivateKeyAndChain(algorithm, tempPrivateKey, tempCerts);
+    }
+
+    private boolean setupPrivateKeyAndChain(String algorithm, ServerKeyCache.Entry entry)
+    {
+        if (!setupPrivateKeyAndChain(algorithm, entry.privateKey, entry.certs))
+            return false;
+        keyCacheEntry = entry;
+        return true;
+    }
+
+    private boolean setupPrivateKeyAndChain(String algorithm, PrivateKey tempPrivateKey, X509Certificate[] tempCerts)
+    {
+        // ALPN_CHANGES_END
         String keyAlgorithm = algorithm.split("_")[0];
         PublicKey publicKey = tempCerts[0].getPublicKey();
         if ((tempPrivateKey.getAlgorithm().equals(keyAlgorithm) == false)
@@ -1861,6 +2251,10 @@ final class ServerHandshaker extends Handshaker {
          */
         if (!resumingSession) {
             input.digestNow();
+            // ALPN_CHANGES_BEGIN
+            if (sendSessionTicket)
+                sendNewSessionTicket();
+            // ALPN_CHANGES_END
             sendChangeCipherAndFinish(true);
         } else {
             handshakeFinished = true;
@@ -1872,8 +2266,9 @@ final class ServerHandshaker extends Handshaker {
          */
         session.setLastAccessedTime(System.currentTimeMillis());
         if (!resumingSession && session.isRejoinable()) {
-            ((SSLSessionContextImpl)sslContext.engineGetServerSessionContext())
-                .put(session);
+            // ALPN_CHANGES_BEGIN
+            storeResumableSession(session);
+            // ALPN_CHANGES_END
             if (debug != null && Debug.isOn("session")) {
                 System.out.println(
                     "%% Cached server session: " + session);
@@ -2013,6 +2408,17 @@ final class ServerHandshaker extends Handshaker {
                 authType = "UNKNOWN";
             }
 
+            // ALPN_CHANGES_BEGIN
+            TrustedChainCache chainCache = TrustedChainCache.get(sslContext.engineGetServerSessionContext());
+            TrustedChainCache.Key chainKey = chainCache == null ? null : TrustedChainCache.newKey(peerCerts, authType, null, null);
+            boolean chainTrusted = chainKey != null && chainCache.isTrusted(chainKey);
+            if (chainTrusted)
+            {
+                if (ALPN.debug)
+                    System.err.println("[S] Cached trusted client certificate " + peerCerts[0].getSubjectX500Principal());
+            }
+            else
+            // ALPN_CHANGES_END
             if (tm instanceof X509ExtendedTrustManager) {
                 if (conn != null) {
                     ((X509ExtendedTrustManager)tm).checkClientTrusted(
@@ -2031,6 +2437,10 @@ final class ServerHandshaker extends Handshaker {
                 throw new CertificateException(
                     "Improper X509TrustManager implementation");
             }
+            // ALPN_CHANGES_BEGIN
+            if (chainKey != null && !chainTrusted)
+                chainCache.trusted(chainKey, peerCerts);
+            // ALPN_CHANGES_END
         } catch (CertificateException e) {
             // This will throw an exception, so include the original error.
             fatalSE(Alerts.alert_certificate_unknown, e);
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+
+import sun.security.util.Cache;
+
+/**
+ * <p>Caches the server private key and certificate chain chosen by the
+ * key manager, so that a full handshake does not ask the key manager to
+ * choose an alias among all the keystore entries every time.</p>
+ * <p>The cache is keyed by the key type, the server names indicated by the
+ * client and the signature algorithms supported by the client, which are
+ * the constraints that the JDK key managers use to choose an alias.
+ * Entries expire when the first certificate of the chain expires, and after
+ * the cache timeout, whichever comes first.</p>
+ * <p>The cache is only used by the server handshakes of the
+ * {@code SSLContext} it is installed on, since a custom key manager may
+ * choose an alias using other connection properties:</p>
+ * <pre>
+ * ServerKeyCache.install(sslContext.getServerSessionContext(), new ServerKeyCache(1024, 3600));
+ * </pre>
+ * <p>Creating a new {@code SSLContext} when keys are reloaded leaves the
+ * cache behind with the discarded one; a key manager that reloads keys in
+ * place must call {@link #invalidate()}.</p>
+ * <p>Each entry also keeps the Certificate handshake message encoded for its
+ * chain, so that full handshakes send it without encoding the chain again.</p>
+ */
+public final class ServerKeyCache
+{
+    private static final WeakIdentityMap<SSLSessionContext, ServerKeyCache> caches = new WeakIdentityMap<>();
+
+    private final Cache<Key, Entry> cache;
+
+    /**
+     * @param size the maximum number of entries in the cache
+     * @param timeout the maximum time in seconds an entry is used
+     */
+    public ServerKeyCache(int size, int timeout)
+    {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("Invalid timeout " + timeout);
+        this.cache = Cache.newSoftMemoryCache(size, timeout);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @param cache the cache of the keys chosen by the server handshakes of the context
+     */
+    public static void install(SSLSessionContext context, ServerKeyCache cache)
+    {
+        caches.put(context, cache);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the cache installed on the context, or null if no cache is installed
+     */
+    public static ServerKeyCache get(SSLSessionContext context)
+    {
+        return caches.get(context);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the cache that was installed on the context, or null if no cache was installed
+     */
+    public static ServerKeyCache uninstall(SSLSessionContext context)
+    {
+        return caches.remove(context);
+    }
+
+    /**
+     * <p>Removes all the entries of the cache.</p>
+     */
+    public void invalidate()
+    {
+        cache.clear();
+    }
+
+    Entry get(Key key)
+    {
+        Entry entry = cache.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis()))
+        {
+            cache.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    void put(Key key, Entry entry)
+    {
+        cache.put(key, entry);
+    }
+
+    static final class Key
+    {
+        private final String keyType;
+        private final List<SNIServerName> serverNames;
+        private final List<String> signatureAlgorithms;
+        private final int hash;
+
+        Key(String keyType, List<SNIServerName> serverNames, Collection<SignatureAndHashAlgorithm> signatureAlgorithms)
+        {
+            this.keyType = keyType;
+            this.serverNames = serverNames == null ? Collections.<SNIServerName>emptyList() : serverNames;
+            this.signatureAlgorithms = signatureAlgorithms == null ? Collections.<String>emptyList() :
+                    Arrays.asList(SignatureAndHashAlgorithm.getAlgorithmNames(signatureAlgorithms));
+            int hash = keyType.hashCode();
+            hash = 31 * hash + this.serverNames.hashCode();
+            hash = 31 * hash + this.signatureAlgorithms.hashCode();
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key that = (Key)obj;
+            return keyType.equals(that.keyType) &&
+                    serverNames.equals(that.serverNames) &&
+                    signatureAlgorithms.equals(that.signatureAlgorithms);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    static final class Entry
+    {
+        final String alias;
+        final PrivateKey privateKey;
+        final X509Certificate[] certs;
+        private final long expires;
+        private volatile EncodedCertificateMsg certificateMessage;
+
+        Entry(String alias, PrivateKey privateKey, X509Certificate[] certs)
+        {
+            this.alias = alias;
+            this.privateKey = privateKey;
+            this.certs = certs;
+            this.expires = certs[0].getNotAfter().getTime();
+        }
+
+        boolean isExpired(long now)
+        {
+            return now > expires;
+        }
+
+        /**
+         * @return the Certificate message for the chain, encoded on first use
+         * @throws SSLException if the chain cannot be encoded
+         */
+        EncodedCertificateMsg getCertificateMessage() throws SSLException
+        {
+            EncodedCertificateMsg message = certificateMessage;
+            if (message == null)
+            {
+                // Racing threads encode the same bytes, so the last one wins harmlessly.
+                message = new EncodedCertificateMsg(certs);
+                certificateMessage = message;
+            }
+            return message;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.spec.SecretKeySpec;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * <p>The state of a server session needed to resume it: protocol version,
+ * cipher suite, master secret, peer certificates, requested host name and
+ * negotiated application protocol.</p>
+ * <p>The state is encoded to bytes so that it can be kept outside of the
+ * JVM heap, for example in session tickets; the encoding contains the
+ * master secret, so it must be encrypted before leaving the server.</p>
+ */
+public final class SessionState
+{
+    private static final int VERSION = 1;
+
+    private final ProtocolVersion protocolVersion;
+    private final CipherSuite cipherSuite;
+    private final boolean useExtendedMasterSecret;
+    private final long creationTime;
+    private final byte[] masterSecret;
+    private final String serverName;
+    private final String applicationProtocol;
+    private final X509Certificate[] peerCertificates;
+
+    SessionState(SSLSessionImpl session, String applicationProtocol)
+    {
+        this(session.getProtocolVersion(), session.getSuite(), session.getUseExtendedMasterSecret(),
+                session.getCreationTime(), session.getMasterSecret().getEncoded(),
+                hostName(session.getRequestedServerNames()), applicationProtocol, peerCertificates(session));
+    }
+
+    private SessionState(ProtocolVersion protocolVersion, CipherSuite cipherSuite, boolean useExtendedMasterSecret, long creationTime,
+                         byte[] masterSecret, String serverName, String applicationProtocol, X509Certificate[] peerCertificates)
+    {
+        this.protocolVersion = protocolVersion;
+        this.cipherSuite = cipherSuite;
+        this.useExtendedMasterSecret = useExtendedMasterSecret;
+        this.creationTime = creationTime;
+        this.masterSecret = masterSecret;
+        this.serverName = serverName;
+        this.applicationProtocol = applicationProtocol;
+        this.peerCertificates = peerCertificates;
+    }
+
+    /**
+     * @param session a server session
+     * @param applicationProtocol the application protocol negotiated for the session, or null
+     * @return the state of the session
+     */
+    public static SessionState from(SSLSession session, String applicationProtocol)
+    {
+        return new SessionState((SSLSessionImpl)session, applicationProtocol);
+    }
+
+    private static String hostName(List<SNIServerName> serverNames)
+    {
+        for (SNIServerName serverName : serverNames)
+        {
+            if (serverName instanceof SNIHostName)
+                return ((SNIHostName)serverName).getAsciiName();
+        }
+        return null;
+    }
+
+    private static X509Certificate[] peerCertificates(SSLSessionImpl session)
+    {
+        try
+        {
+            Certificate[] certificates = session.getPeerCertificates();
+            X509Certificate[] result = new X509Certificate[certificates.length];
+            for (int i = 0; i < certificates.length; ++i)
+                result[i] = (X509Certificate)certificates[i];
+            return result;
+        }
+        catch (SSLPeerUnverifiedException x)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return the TLS protocol version of the session, for example "TLSv1.2"
+     */
+    public String getProtocolVersion()
+    {
+        return protocolVersion.name;
+    }
+
+    /**
+     * @return the cipher suite of the session
+     */
+    public String getCipherSuite()
+    {
+        return cipherSuite.name;
+    }
+
+    /**
+     * @return the creation time of the session, in milliseconds since the epoch
+     */
+    public long getCreationTime()
+    {
+        return creationTime;
+    }
+
+    /**
+     * @return the host name requested by the client, or null
+     */
+    public String getServerName()
+    {
+        return serverName;
+    }
+
+    /**
+     * @return the application protocol negotiated via ALPN, or null
+     */
+    public String getApplicationProtocol()
+    {
+        return applicationProtocol;
+    }
+
+    /**
+     * @param timeout the session timeout in seconds, or 0 for no timeout
+     * @return whether the session has expired
+     */
+    public boolean isExpired(int timeout)
+    {
+        return timeout > 0 && System.currentTimeMillis() - creationTime > timeout * 1000L;
+    }
+
+    /**
+     * <p>Creates a session from this state, for a server that resumes it.</p>
+     */
+    SSLSessionImpl toSession(SessionId sessionId, Collection<SignatureAndHashAlgorithm> localSupportedSignAlgs,
+                             String host, int port, String identificationAlgorithm)
+    {
+        SSLSessionImpl session = new SSLSessionImpl(protocolVersion, cipherSuite, localSupportedSignAlgs,
+                sessionId, host, port, useExtendedMasterSecret, identificationAlgorithm);
+        session.setMasterSecret(new SecretKeySpec(masterSecret, "TlsMasterSecret"));
+        if (peerCertificates != null)
+            session.setPeerCertificates(peerCertificates);
+        if (serverName != null)
+            session.setRequestedServerNames(Collections.<SNIServerName>singletonList(new SNIHostName(serverName)));
+        else
+            session.setRequestedServerNames(Collections.<SNIServerName>emptyList());
+        return session;
+    }
+
+    byte[] encode() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(VERSION);
+        output.writeShort(protocolVersion.v);
+        output.writeShort(cipherSuite.id);
+        output.writeBoolean(useExtendedMasterSecret);
+        output.writeLong(creationTime);
+        writeBytes(output, masterSecret);
+        writeString(output, serverName);
+        writeString(output, applicationProtocol);
+        if (peerCertificates == null)
+        {
+            output.writeByte(0);
+        }
+        else
+        {
+            output.writeByte(peerCertificates.length);
+            for (X509Certificate certificate : peerCertificates)
+            {
+                try
+                {
+                    writeBytes(output, certificate.getEncoded());
+                }
+                catch (CertificateException x)
+                {
+                    throw new IOException(x);
+                }
+            }
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    static SessionState decode(byte[] bytes) throws IOException
+    {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (input.readUnsignedByte() != VERSION)
+            throw new IOException("Unsupported session state version");
+        int version = input.readUnsignedShort();
+        ProtocolVersion protocolVersion = ProtocolVersion.valueOf(version >>> 8, version & 0xFF);
+        int suite = input.readUnsignedShort();
+        CipherSuite cipherSuite = CipherSuite.valueOf(suite >>> 8, suite & 0xFF);
+        boolean useExtendedMasterSecret = input.readBoolean();
+        long creationTime = input.readLong();
+        byte[] masterSecret = readBytes(input);
+        String serverName = readString(input);
+        String applicationProtocol = readString(input);
+        X509Certificate[] peerCertificates = null;
+        int count = input.readUnsignedByte();
+        if (count > 0)
+        {
+            try
+            {
+                CertificateFactory factory = CertificateFactory.getInstance("X.509");
+                peerCertificates = new X509Certificate[count];
+                for (int i = 0; i < count; ++i)
+                    peerCertificates[i] = (X509Certificate)factory.generateCertificate(new ByteArrayInputStream(readBytes(input)));
+            }
+            catch (CertificateException x)
+            {
+                throw new IOException(x);
+            }
+        }
+        return new SessionState(protocolVersion, cipherSuite, useExtendedMasterSecret, creationTime,
+                masterSecret, serverName, applicationProtocol, peerCertificates);
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException
+    {
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException
+    {
+        int length = input.readInt();
+        if (length < 0 || length > input.available())
+            throw new IOException("Invalid session state length " + length);
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException
+    {
+        writeBytes(output, value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream input) throws IOException
+    {
+        byte[] bytes = readBytes(input);
+        return bytes.length == 0 ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,%s,sni=%s,alpn=%s]", getClass().getSimpleName(), hashCode(),
+                protocolVersion, cipherSuite, serverName, applicationProtocol);
+    }
+}
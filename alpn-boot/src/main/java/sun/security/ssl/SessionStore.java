@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+/**
+ * <p>A store of server session states, consulted by the server when a
+ * client asks to resume a session that is not in the session cache of the
+ * {@code SSLContext}, and populated after each full handshake.</p>
+ * <p>Stores keep sessions beyond the lifetime of the session cache, for
+ * example across restarts or across servers; they are installed on the
+ * server session context of a {@code SSLContext} with
+ * {@link SessionStores#install(javax.net.ssl.SSLSessionContext, SessionStore)}.</p>
+ * <p>Implementations must be thread-safe, and must not block the handshake
+ * for long: they are called from the handshaking thread.</p>
+ */
+public interface SessionStore
+{
+    /**
+     * @param sessionId the session id
+     * @return the session state, or null if the session is not in the store
+     */
+    SessionState get(byte[] sessionId);
+
+    /**
+     * @param sessionId the session id
+     * @param state the session state to store
+     */
+    void put(byte[] sessionId, SessionState state);
+
+    /**
+     * @param sessionId the session id of the session to remove
+     */
+    void remove(byte[] sessionId);
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.lang.ref.WeakReference;
+
+import javax.net.ssl.SSLSessionContext;
+
+import sun.security.util.Cache;
+
+/**
+ * <p>The registry of the {@link SessionStore}s installed on server session
+ * contexts.</p>
+ * <p>The registry also remembers, through weak references, the last
+ * {@code jetty.alpn.sessionStores.trackedSessions} sessions (4096 by
+ * default) that the servers of a context put in the store or resumed from
+ * it, so that a session invalidated on this server, by the application or
+ * after a fatal alert, is removed from the store when a client next tries
+ * to resume it here, instead of being resumed.
+ * Expired sessions are detected from the creation time stored with them,
+ * and are left to the store to evict.</p>
+ * <p>{@link #uninstall(SSLSessionContext)} also forgets the sessions
+ * tracked for the context; the store itself is left untouched.</p>
+ */
+public final class SessionStores
+{
+    private static final int TRACKED_SESSIONS = Integer.getInteger("jetty.alpn.sessionStores.trackedSessions", 4096);
+    private static final WeakIdentityMap<SSLSessionContext, Registration> registrations = new WeakIdentityMap<>();
+
+    private SessionStores()
+    {
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @param store the store for the server sessions of the context
+     */
+    public static void install(SSLSessionContext context, SessionStore store)
+    {
+        registrations.put(context, new Registration(store));
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the store installed on the context, or null if no store is installed
+     */
+    public static SessionStore get(SSLSessionContext context)
+    {
+        Registration registration = registrations.get(context);
+        return registration == null ? null : registration.store;
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the store that was installed on the context, or null if no store was installed
+     */
+    public static SessionStore uninstall(SSLSessionContext context)
+    {
+        Registration registration = registrations.remove(context);
+        return registration == null ? null : registration.store;
+    }
+
+    /**
+     * <p>Puts a session established by a full handshake in the store, and tracks it.</p>
+     */
+    static void put(SSLSessionContext context, SSLSessionImpl session, String applicationProtocol)
+    {
+        Registration registration = registrations.get(context);
+        if (registration == null)
+            return;
+        registration.store.put(session.getSessionId().getId(), new SessionState(session, applicationProtocol));
+        track(registration, session, applicationProtocol);
+    }
+
+    /**
+     * <p>Tracks a session restored from the store.</p>
+     */
+    static void restored(SSLSessionContext context, SSLSessionImpl session, String applicationProtocol)
+    {
+        Registration registration = registrations.get(context);
+        if (registration != null)
+            track(registration, session, applicationProtocol);
+    }
+
+    private static void track(Registration registration, SSLSessionImpl session, String applicationProtocol)
+    {
+        registration.sessions.put(session.getSessionId(), new Tracked(session, applicationProtocol));
+    }
+
+    /**
+     * <p>Returns the session with the given id put in the store or restored from it by this
+     * server, and removes it from the store if it has been invalidated.</p>
+     *
+     * @return the session, null if the session is not tracked, or {@link Entry#INVALIDATED}
+     */
+    static Entry tracked(SSLSessionContext context, byte[] sessionId)
+    {
+        Registration registration = registrations.get(context);
+        if (registration == null)
+            return null;
+        SessionId id = new SessionId(sessionId);
+        Tracked tracked = registration.sessions.get(id);
+        if (tracked == null)
+            return null;
+        SSLSessionImpl session = tracked.get();
+        if (session == null)
+        {
+            registration.sessions.remove(id);
+            return null;
+        }
+        if (session.isRejoinable())
+            return new Entry(session, tracked.applicationProtocol);
+        registration.sessions.remove(id);
+        registration.store.remove(sessionId);
+        return Entry.INVALIDATED;
+    }
+
+    static final class Entry
+    {
+        static final Entry INVALIDATED = new Entry(null, null);
+
+        final SSLSessionImpl session;
+        final String applicationProtocol;
+
+        private Entry(SSLSessionImpl session, String applicationProtocol)
+        {
+            this.session = session;
+            this.applicationProtocol = applicationProtocol;
+        }
+    }
+
+    private static final class Tracked extends WeakReference<SSLSessionImpl>
+    {
+        private final String applicationProtocol;
+
+        private Tracked(SSLSessionImpl session, String applicationProtocol)
+        {
+            super(session);
+            this.applicationProtocol = applicationProtocol;
+        }
+    }
+
+    private static final class Registration
+    {
+        private final SessionStore store;
+        private final Cache<SessionId, Tracked> sessions = Cache.newHardMemoryCache(TRACKED_SESSIONS);
+
+        private Registration(SessionStore store)
+        {
+            this.store = store;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+
+/**
+ * <p>The SessionTicket extension, see RFC 5077.</p>
+ * <p>In the ClientHello, the extension carries the ticket the client wants
+ * to resume with, or nothing when the client has no ticket yet.
+ * In the ServerHello, the extension is empty and announces that the server
+ * will send a NewSessionTicket message.</p>
+ */
+public class SessionTicketExtension extends HelloExtension
+{
+    private static final int ID = ExtensionType.EXT_SESSION_TICKET.id;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final byte[] ticket;
+
+    public SessionTicketExtension()
+    {
+        this(EMPTY);
+    }
+
+    public SessionTicketExtension(byte[] ticket)
+    {
+        super(ExtensionType.get(ID));
+        this.ticket = ticket;
+    }
+
+    public SessionTicketExtension(HandshakeInStream input, int length) throws IOException
+    {
+        super(ExtensionType.get(ID));
+        ticket = new byte[length];
+        if (length > 0)
+            input.read(ticket, 0, length);
+    }
+
+    public byte[] getTicket()
+    {
+        return ticket;
+    }
+
+    @Override
+    int length()
+    {
+        return 2 + 2 + ticket.length;
+    }
+
+    @Override
+    void send(HandshakeOutStream out) throws IOException
+    {
+        out.putInt16(ID);
+        out.putInt16(ticket.length);
+        out.write(ticket, 0, ticket.length);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Extension %s, ticket length: %d", type, ticket.length);
+    }
+}
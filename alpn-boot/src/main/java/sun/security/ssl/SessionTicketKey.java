@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.util.Arrays;
+
+/**
+ * <p>A key that encrypts and authenticates session tickets.</p>
+ * <p>The key name is sent in clear in each ticket, so that the server
+ * can find the key that decrypts the ticket after keys are rotated.</p>
+ */
+public final class SessionTicketKey
+{
+    /**
+     * The length in bytes of key names.
+     */
+    public static final int NAME_LENGTH = 16;
+
+    private final byte[] name;
+    private final byte[] secret;
+
+    /**
+     * @param name the key name, {@link #NAME_LENGTH} bytes
+     * @param secret the AES key, 16 or 32 bytes
+     */
+    public SessionTicketKey(byte[] name, byte[] secret)
+    {
+        if (name.length != NAME_LENGTH)
+            throw new IllegalArgumentException("Invalid session ticket key name length " + name.length);
+        if (secret.length != 16 && secret.length != 32)
+            throw new IllegalArgumentException("Invalid session ticket key length " + secret.length);
+        this.name = name.clone();
+        this.secret = secret.clone();
+    }
+
+    byte[] getName()
+    {
+        return name;
+    }
+
+    byte[] getSecret()
+    {
+        return secret;
+    }
+
+    /**
+     * @param name a key name
+     * @return whether this key has the given name
+     */
+    public boolean hasName(byte[] name)
+    {
+        return Arrays.equals(this.name, name);
+    }
+}
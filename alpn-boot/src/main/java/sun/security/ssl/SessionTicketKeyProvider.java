@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+/**
+ * <p>Provides the keys that encrypt and decrypt session tickets.</p>
+ * <p>Servers that share the same keys can resume the sessions of each other.
+ * To rotate keys, a provider first makes the new key available for
+ * decryption on all servers, then uses it for encryption, and finally
+ * removes the old key after the session timeout.</p>
+ * <p>Implementations must be thread-safe.</p>
+ *
+ * @see FileSessionTicketKeyProvider
+ */
+public interface SessionTicketKeyProvider
+{
+    /**
+     * @return the key that encrypts new tickets, or null to not issue tickets
+     */
+    SessionTicketKey getEncryptionKey();
+
+    /**
+     * @param name the name of the key, as found in a ticket
+     * @return the key with the given name, or null if the key is unknown
+     */
+    SessionTicketKey getDecryptionKey(byte[] name);
+}
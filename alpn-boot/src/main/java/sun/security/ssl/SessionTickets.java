@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.eclipse.jetty.alpn.ALPN;
+
+/**
+ * <p>Stateless session resumption with session tickets, see RFC 5077.</p>
+ * <p>Once a {@link SessionTicketKeyProvider} is installed on the server
+ * session context of a {@code SSLContext}, servers issue a ticket to the
+ * clients that send the SessionTicket extension, and resume the sessions
+ * of the clients that send back a ticket, even if the ticket was issued by
+ * another server that shares the same keys.</p>
+ * <pre>
+ * SessionTicketKeyProvider keys = new FileSessionTicketKeyProvider(Paths.get("/etc/tls/tickets"), 10000);
+ * SessionTickets.install(sslContext.getServerSessionContext(), keys);
+ * </pre>
+ * <p>A ticket is the key name, a random IV and the {@link SessionState}
+ * encrypted and authenticated with AES-GCM.
+ * Tickets are valid for the session timeout of the server session context.</p>
+ * <p>Once {@link #uninstall(SSLSessionContext)} is called, the context
+ * neither issues nor accepts tickets.</p>
+ * <p>Once {@link #installClient(SSLSessionContext)} is called on the client
+ * session context of a {@code SSLContext}, clients send the SessionTicket
+ * extension, keep the ticket issued by the server with the session, and
+ * send it back when they resume the session, so that any server sharing
+ * the keys resumes it.</p>
+ */
+public final class SessionTickets
+{
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final WeakIdentityMap<SSLSessionContext, SessionTicketKeyProvider> providers = new WeakIdentityMap<>();
+    private static final WeakIdentityMap<SSLSessionContext, Boolean> clients = new WeakIdentityMap<>();
+    private static final WeakIdentityMap<SSLSession, byte[]> tickets = new WeakIdentityMap<>();
+    private static final SecureRandom random = new SecureRandom();
+
+    private SessionTickets()
+    {
+    }
+
+    /**
+     * <p>Enables session tickets for a server session context.</p>
+     *
+     * @param context the server session context of a {@code SSLContext}
+     * @param provider the provider of the session ticket keys
+     */
+    public static void install(SSLSessionContext context, SessionTicketKeyProvider provider)
+    {
+        providers.put(context, provider);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the session ticket key provider of the context, or null if session tickets are disabled
+     */
+    public static SessionTicketKeyProvider get(SSLSessionContext context)
+    {
+        return providers.get(context);
+    }
+
+    /**
+     * <p>Disables session tickets for a server session context.</p>
+     *
+     * @param context the server session context of a {@code SSLContext}
+     * @return the session ticket key provider that was installed, or null
+     */
+    public static SessionTicketKeyProvider uninstall(SSLSessionContext context)
+    {
+        return providers.remove(context);
+    }
+
+    /**
+     * <p>Enables session tickets for a client session context.</p>
+     *
+     * @param context the client session context of a {@code SSLContext}
+     */
+    public static void installClient(SSLSessionContext context)
+    {
+        clients.put(context, Boolean.TRUE);
+    }
+
+    /**
+     * <p>Disables session tickets for a client session context.</p>
+     *
+     * @param context the client session context of a {@code SSLContext}
+     * @return whether session tickets were enabled
+     */
+    public static boolean uninstallClient(SSLSessionContext context)
+    {
+        return clients.remove(context) != null;
+    }
+
+    /**
+     * @param context the client session context of a {@code SSLContext}
+     * @return whether session tickets are enabled for the context
+     */
+    public static boolean isClientInstalled(SSLSessionContext context)
+    {
+        return clients.get(context) != null;
+    }
+
+    /**
+     * @param session a client session
+     * @return the ticket the server issued for the session, or null if the server issued none
+     */
+    public static byte[] getTicket(SSLSession session)
+    {
+        return tickets.get(session);
+    }
+
+    static void ticket(SSLSession session, byte[] ticket)
+    {
+        if (ticket == null)
+            tickets.remove(session);
+        else
+            tickets.put(session, ticket);
+    }
+
+    /**
+     * @param session a server session
+     * @param applicationProtocol the application protocol negotiated for the session, or null
+     * @param provider the provider of the session ticket keys
+     * @return a new ticket for the session, or null if the provider has no encryption key
+     * @throws SSLException if the ticket cannot be created
+     */
+    public static byte[] seal(SSLSession session, String applicationProtocol, SessionTicketKeyProvider provider) throws SSLException
+    {
+        SessionTicketKey key = provider.getEncryptionKey();
+        if (key == null)
+            return null;
+        try
+        {
+            return encrypt(new SessionState((SSLSessionImpl)session, applicationProtocol).encode(), key);
+        }
+        catch (IOException | GeneralSecurityException x)
+        {
+            throw new SSLException("Could not create session ticket", x);
+        }
+    }
+
+    /**
+     * @param ticket a ticket sent by a client
+     * @param provider the provider of the session ticket keys
+     * @return the session state in the ticket, or null if the ticket is not valid
+     */
+    public static SessionState open(byte[] ticket, SessionTicketKeyProvider provider)
+    {
+        if (ticket.length < SessionTicketKey.NAME_LENGTH + IV_LENGTH + TAG_LENGTH)
+            return null;
+        SessionTicketKey key = provider.getDecryptionKey(Arrays.copyOf(ticket, SessionTicketKey.NAME_LENGTH));
+        if (key == null)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Unknown session ticket key");
+            return null;
+        }
+        try
+        {
+            byte[] state = decrypt(ticket, key);
+            try
+            {
+                return SessionState.decode(state);
+            }
+            finally
+            {
+                Arrays.fill(state, (byte)0);
+            }
+        }
+        catch (IOException | GeneralSecurityException | IllegalArgumentException x)
+        {
+            if (ALPN.debug)
+                System.err.println("[S] Invalid session ticket: " + x);
+            return null;
+        }
+    }
+
+    /**
+     * @return the key name, a random IV, and the data encrypted and authenticated with the key
+     */
+    static byte[] encrypt(byte[] data, SessionTicketKey key) throws GeneralSecurityException
+    {
+        return encrypt(data, key, null);
+    }
+
+    /**
+     * @return the data encrypted under the key, authenticated together with the additional data
+     */
+    static byte[] encrypt(byte[] data, SessionTicketKey key, byte[] additionalData) throws GeneralSecurityException
+    {
+        byte[] name = key.getName();
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        Cipher cipher = cipher(Cipher.ENCRYPT_MODE, key, iv, additionalData);
+        byte[] result = new byte[name.length + iv.length + data.length + TAG_LENGTH];
+        System.arraycopy(name, 0, result, 0, name.length);
+        System.arraycopy(iv, 0, result, name.length, iv.length);
+        cipher.doFinal(data, 0, data.length, result, name.length + iv.length);
+        Arrays.fill(data, (byte)0);
+        return result;
+    }
+
+    /**
+     * @return the data encrypted by {@link #encrypt(byte[], SessionTicketKey)}
+     */
+    static byte[] decrypt(byte[] encrypted, SessionTicketKey key) throws GeneralSecurityException
+    {
+        return decrypt(encrypted, key, null);
+    }
+
+    /**
+     * @return the data encrypted by {@link #encrypt(byte[], SessionTicketKey, byte[])}
+     * with the same additional data
+     */
+    static byte[] decrypt(byte[] encrypted, SessionTicketKey key, byte[] additionalData) throws GeneralSecurityException
+    {
+        int offset = SessionTicketKey.NAME_LENGTH + IV_LENGTH;
+        byte[] iv = Arrays.copyOfRange(encrypted, SessionTicketKey.NAME_LENGTH, offset);
+        Cipher cipher = cipher(Cipher.DECRYPT_MODE, key, iv, additionalData);
+        return cipher.doFinal(encrypted, offset, encrypted.length - offset);
+    }
+
+    private static Cipher cipher(int mode, SessionTicketKey key, byte[] iv, byte[] additionalData) throws GeneralSecurityException
+    {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, new SecretKeySpec(key.getSecret(), "AES"), new GCMParameterSpec(TAG_LENGTH * 8, iv));
+        cipher.updateAAD(key.getName());
+        if (additionalData != null)
+            cipher.updateAAD(additionalData);
+        return cipher;
+    }
+}
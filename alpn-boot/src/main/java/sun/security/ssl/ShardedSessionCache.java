@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * <p>A server session cache split in shards, to replace the single
+ * synchronized cache of the JDK on servers that perform many handshakes
+ * concurrently.</p>
+ * <p>Lookups never lock: each shard is a {@link ConcurrentHashMap}, and the
+ * last access time of an entry is a volatile field.
+ * When a shard is full, a few consecutive entries are sampled from a random
+ * region of its hash table and the least recently used among them is
+ * evicted, which approximates LRU eviction without maintaining an access
+ * order; if sampling does not bring the shard back to its capacity, the
+ * first entries of the shard are evicted.</p>
+ * <p>The cache honors the session timeout and the session cache size of the
+ * context it is installed on, the size being split evenly among the
+ * shards. Invalidated sessions are never resumed, and are removed when a
+ * client tries to resume them. The sessions of the cache are not listed by
+ * {@link SSLSessionContext#getIds()} nor returned by
+ * {@link SSLSessionContext#getSession(byte[])}; use {@link #remove(byte[])}
+ * to remove a session by id.</p>
+ * <p>Each entry also records the application protocol negotiated via ALPN
+ * for the session, which a {@link ResumingServerProvider} is given back
+ * when the session is resumed.</p>
+ * <p>A cache is used by the server handshakes of a {@code SSLContext} once
+ * it is installed on the server session context:</p>
+ * <pre>
+ * ShardedSessionCache cache = new ShardedSessionCache(16);
+ * ShardedSessionCache.install(sslContext.getServerSessionContext(), cache);
+ * </pre>
+ * <p>The cache retains the sessions of the context, including their master
+ * secrets, until {@link #uninstall(SSLSessionContext)} is called or the
+ * {@code SSLContext} is garbage collected.</p>
+ */
+public final class ShardedSessionCache
+{
+    private static final int EVICTION_SAMPLES = 8;
+    private static final int EVICTION_ATTEMPTS = 4;
+    private static final WeakIdentityMap<SSLSessionContext, ShardedSessionCache> caches = new WeakIdentityMap<>();
+
+    private final Shard[] shards;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param shards the number of shards
+     */
+    public ShardedSessionCache(int shards)
+    {
+        if (shards <= 0)
+            throw new IllegalArgumentException("Invalid shard count " + shards);
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; ++i)
+            this.shards[i] = new Shard();
+    }
+
+    /**
+     * <p>Installs a cache on a server session context.</p>
+     *
+     * @param context the server session context of a {@code SSLContext}
+     * @param cache the cache for the server sessions of the context
+     */
+    public static void install(SSLSessionContext context, ShardedSessionCache cache)
+    {
+        caches.put(context, cache);
+    }
+
+    /**
+     * @param context the server session context of a {@code SSLContext}
+     * @return the cache installed on the context, or null if no cache is installed
+     */
+    public static ShardedSessionCache get(SSLSessionContext context)
+    {
+        return caches.get(context);
+    }
+
+    /**
+     * <p>Removes the cache installed on a server session context.</p>
+     *
+     * @param context the server session context of a {@code SSLContext}
+     * @return the cache that was installed on the context, or null if no cache was installed
+     */
+    public static ShardedSessionCache uninstall(SSLSessionContext context)
+    {
+        return caches.remove(context);
+    }
+
+    Entry get(SSLSessionContext context, byte[] id)
+    {
+        SessionId key = new SessionId(id);
+        Shard shard = shardFor(key);
+        Entry entry = shard.entries.get(key);
+        if (entry == null)
+        {
+            misses.increment();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, timeout(context), now) || !entry.session.isRejoinable())
+        {
+            if (shard.remove(key, entry))
+                expirations.increment();
+            misses.increment();
+            return null;
+        }
+        entry.lastAccess = now;
+        hits.increment();
+        return entry;
+    }
+
+    void put(SSLSessionContext context, SSLSessionImpl session, String applicationProtocol)
+    {
+        SessionId key = session.getSessionId();
+        Shard shard = shardFor(key);
+        long now = System.currentTimeMillis();
+        if (!shard.put(key, new Entry(session, applicationProtocol, now)))
+            return;
+        int size = context.getSessionCacheSize();
+        if (size <= 0)
+            return;
+        int capacity = (size + shards.length - 1) / shards.length;
+        long timeout = timeout(context);
+        for (int attempt = 0; attempt < EVICTION_ATTEMPTS && shard.size.get() > capacity; ++attempt)
+        {
+            if (evict(shard, timeout, now))
+                evictions.increment();
+        }
+        if (shard.size.get() > capacity)
+        {
+            for (Map.Entry<SessionId, Entry> entry : shard.entries.entrySet())
+            {
+                if (shard.size.get() <= capacity)
+                    break;
+                if (shard.remove(entry.getKey(), entry.getValue()))
+                    evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * @param id the session id
+     * @return whether the session was removed
+     */
+    public boolean remove(byte[] id)
+    {
+        SessionId key = new SessionId(id);
+        Shard shard = shardFor(key);
+        Entry entry = shard.entries.get(key);
+        return entry != null && shard.remove(key, entry);
+    }
+
+    /**
+     * <p>Removes all the sessions.</p>
+     */
+    public void clear()
+    {
+        for (Shard shard : shards)
+        {
+            for (Map.Entry<SessionId, Entry> entry : shard.entries.entrySet())
+                shard.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private boolean evict(Shard shard, long timeout, long now)
+    {
+        // Each split halves the range of the hash table covered by the spliterator,
+        // so a random region is reached in a logarithmic number of steps, rather
+        // than always sampling the first entries of the table.
+        Spliterator<Map.Entry<SessionId, Entry>> spliterator = shard.entries.entrySet().spliterator();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (spliterator.estimateSize() > 2 * EVICTION_SAMPLES)
+        {
+            Spliterator<Map.Entry<SessionId, Entry>> prefix = spliterator.trySplit();
+            if (prefix == null)
+                break;
+            if (random.nextBoolean())
+                spliterator = prefix;
+        }
+
+        // Sample a few entries and evict the least recently used, or the first expired.
+        Sample sample = new Sample(timeout, now);
+        for (int i = 0; i < EVICTION_SAMPLES && !sample.expired; ++i)
+        {
+            if (!spliterator.tryAdvance(sample))
+                break;
+        }
+        if (sample.victim == null)
+            return false;
+        if (sample.expired)
+        {
+            if (shard.remove(sample.victimKey, sample.victim))
+                expirations.increment();
+            return false;
+        }
+        return shard.remove(sample.victimKey, sample.victim);
+    }
+
+    private static long timeout(SSLSessionContext context)
+    {
+        return context.getSessionTimeout() * 1000L;
+    }
+
+    private static boolean isExpired(Entry entry, long timeout, long now)
+    {
+        return timeout > 0 && now - entry.creationTime > timeout;
+    }
+
+    private Shard shardFor(SessionId key)
+    {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return shards[(hash & 0x7FFFFFFF) % shards.length];
+    }
+
+    /**
+     * @return the number of sessions in the cache
+     */
+    public int getSize()
+    {
+        int size = 0;
+        for (Shard shard : shards)
+            size += shard.size.get();
+        return size;
+    }
+
+    /**
+     * @return the number of lookups that found a resumable session
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find a resumable session
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return the ratio of lookups that found a resumable session, between 0 and 1
+     */
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double)hits / lookups;
+    }
+
+    /**
+     * @return the number of sessions evicted because their shard was full
+     */
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of sessions removed because they expired
+     */
+    public long getExpirations()
+    {
+        return expirations.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[shards=%d,size=%d,hits=%d,misses=%d,evictions=%d]", getClass().getSimpleName(), hashCode(),
+                shards.length, getSize(), getHits(), getMisses(), getEvictions());
+    }
+
+    static final class Entry
+    {
+        final SSLSessionImpl session;
+        final String applicationProtocol;
+        final long creationTime;
+        volatile long lastAccess;
+
+        private Entry(SSLSessionImpl session, String applicationProtocol, long creationTime)
+        {
+            this.session = session;
+            this.applicationProtocol = applicationProtocol;
+            this.creationTime = creationTime;
+            this.lastAccess = creationTime;
+        }
+    }
+
+    private static class Sample implements Consumer<Map.Entry<SessionId, Entry>>
+    {
+        private final long timeout;
+        private final long now;
+        private SessionId victimKey;
+        private Entry victim;
+        private boolean expired;
+
+        private Sample(long timeout, long now)
+        {
+            this.timeout = timeout;
+            this.now = now;
+        }
+
+        @Override
+        public void accept(Map.Entry<SessionId, Entry> candidate)
+        {
+            Entry entry = candidate.getValue();
+            if (isExpired(entry, timeout, now))
+            {
+                victimKey = candidate.getKey();
+                victim = entry;
+                expired = true;
+            }
+            else if (victim == null || entry.lastAccess < victim.lastAccess)
+            {
+                victimKey = candidate.getKey();
+                victim = entry;
+            }
+        }
+    }
+
+    private static final class Shard
+    {
+        private final ConcurrentMap<SessionId, Entry> entries = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private boolean put(SessionId key, Entry entry)
+        {
+            if (entries.put(key, entry) != null)
+                return false;
+            size.incrementAndGet();
+            return true;
+        }
+
+        private boolean remove(SessionId key, Entry entry)
+        {
+            if (!entries.remove(key, entry))
+                return false;
+            size.decrementAndGet();
+            return true;
+        }
+    }
+}
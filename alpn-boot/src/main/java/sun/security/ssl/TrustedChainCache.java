@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.net.ssl.SSLSessionContext;
+
+import sun.security.util.Cache;
+
+/**
+ * <p>Caches the certificate chains that the trust manager of a
+ * {@code SSLContext} validated, so that handshakes with a peer that already
+ * presented the same chain skip path building and signature verification.</p>
+ * <p>A cache installed on the client session context of a {@code SSLContext}
+ * caches the server chains validated by its client handshakes; a cache
+ * installed on the server session context caches the client chains validated
+ * by its server handshakes, when client authentication is requested.</p>
+ * <p>A validated chain is identified by the SHA-256 hash of its encoding and
+ * the parameters the trust manager validated the chain with (the
+ * authentication type and, for server certificates, the endpoint
+ * identification algorithm and the peer host).
+ * A validated chain is trusted again until one of its certificates expires,
+ * and at most for the cache timeout, so that revocations are honored after
+ * the timeout.</p>
+ * <pre>
+ * TrustedChainCache cache = new TrustedChainCache(4096, TimeUnit.MINUTES.toMillis(5));
+ * TrustedChainCache.install(sslContext.getClientSessionContext(), cache);
+ * </pre>
+ * <p>The entries are only ever trusted by the handshakes of the
+ * {@code SSLContext} the cache is installed on.
+ * When the trust store is reloaded by creating a new {@code SSLContext},
+ * the cache goes away with the discarded one; a trust manager that reloads
+ * its trust store in place must call {@link #invalidate()}.</p>
+ */
+public final class TrustedChainCache
+{
+    private static final WeakIdentityMap<SSLSessionContext, TrustedChainCache> caches = new WeakIdentityMap<>();
+
+    private final long timeout;
+    private final Cache<Key, Long> cache;
+
+    /**
+     * @param size the maximum number of validated chains in the cache
+     * @param timeout the maximum time in milliseconds a validated chain is trusted again
+     */
+    public TrustedChainCache(int size, long timeout)
+    {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("Invalid timeout " + timeout);
+        this.timeout = timeout;
+        this.cache = Cache.newHardMemoryCache(size);
+    }
+
+    /**
+     * <p>Installs a cache on a session context.</p>
+     *
+     * @param context the client or server session context of a {@code SSLContext}
+     * @param cache the cache of the chains validated by the handshakes of the context
+     */
+    public static void install(SSLSessionContext context, TrustedChainCache cache)
+    {
+        caches.put(context, cache);
+    }
+
+    /**
+     * @param context the client or server session context of a {@code SSLContext}
+     * @return the cache installed on the context, or null if no cache is installed
+     */
+    public static TrustedChainCache get(SSLSessionContext context)
+    {
+        return caches.get(context);
+    }
+
+    /**
+     * <p>Removes and clears the cache installed on a session context.</p>
+     *
+     * @param context the client or server session context of a {@code SSLContext}
+     * @return the cache that was installed on the context, or null if no cache was installed
+     */
+    public static TrustedChainCache uninstall(SSLSessionContext context)
+    {
+        TrustedChainCache cache = caches.remove(context);
+        if (cache != null)
+            cache.invalidate();
+        return cache;
+    }
+
+    /**
+     * @return the number of validated chains in the cache
+     */
+    public int size()
+    {
+        return cache.size();
+    }
+
+    /**
+     * <p>Removes all the entries of the cache.</p>
+     */
+    public void invalidate()
+    {
+        cache.clear();
+    }
+
+    /**
+     * @return a key for the given chain, or null if the chain cannot be hashed
+     */
+    static Key newKey(X509Certificate[] chain, String authType, String identificationAlgorithm, String host)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (X509Certificate certificate : chain)
+                digest.update(certificate.getEncoded());
+            return new Key(digest.digest(), authType, identificationAlgorithm, host);
+        }
+        catch (NoSuchAlgorithmException | CertificateEncodingException x)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the chain identified by the key has been validated and is still trusted
+     */
+    boolean isTrusted(Key key)
+    {
+        Long expires = cache.get(key);
+        if (expires == null)
+            return false;
+        if (System.currentTimeMillis() > expires)
+        {
+            cache.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * <p>Records that the trust manager validated the chain identified by the key.</p>
+     */
+    void trusted(Key key, X509Certificate[] chain)
+    {
+        long expires = System.currentTimeMillis() + timeout;
+        for (X509Certificate certificate : chain)
+            expires = Math.min(expires, certificate.getNotAfter().getTime());
+        cache.put(key, expires);
+    }
+
+    static final class Key
+    {
+        private final byte[] hash;
+        private final String authType;
+        private final String identificationAlgorithm;
+        private final String host;
+        private final int hashCode;
+
+        private Key(byte[] hash, String authType, String identificationAlgorithm, String host)
+        {
+            this.hash = hash;
+            this.authType = authType;
+            this.identificationAlgorithm = identificationAlgorithm;
+            this.host = host;
+            this.hashCode = Arrays.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key that = (Key)obj;
+            return Arrays.equals(hash, that.hash) &&
+                    Objects.equals(authType, that.authType) &&
+                    Objects.equals(identificationAlgorithm, that.identificationAlgorithm) &&
+                    Objects.equals(host, that.host);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
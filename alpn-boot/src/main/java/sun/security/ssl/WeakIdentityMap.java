@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014, Mort Bay Consulting Pty. Ltd. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Mort Bay Consulting designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Mort Bay Consulting in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package sun.security.ssl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>A concurrent map whose keys are compared by identity and weakly
+ * referenced, used to attach state to session contexts and sessions.</p>
+ * <p>An entry is dropped once its key is garbage collected, so that the
+ * state installed on a {@code SSLContext} that is discarded without being
+ * uninstalled does not outlive it. The values must not reference their
+ * key, or the key is never collected.</p>
+ */
+final class WeakIdentityMap<K, V>
+{
+    private final ConcurrentMap<Key<K>, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+    /**
+     * @return the value previously mapped to the key, or null
+     */
+    V put(K key, V value)
+    {
+        expunge();
+        return map.put(new Key<>(key, queue), value);
+    }
+
+    /**
+     * @return the value mapped to the key, or null
+     */
+    V get(K key)
+    {
+        return map.get(new Key<>(key, null));
+    }
+
+    /**
+     * @return the value that was mapped to the key, or null
+     */
+    V remove(K key)
+    {
+        expunge();
+        return map.remove(new Key<>(key, null));
+    }
+
+    private void expunge()
+    {
+        Reference<? extends K> reference;
+        while ((reference = queue.poll()) != null)
+            map.remove(reference);
+    }
+
+    private static final class Key<K> extends WeakReference<K>
+    {
+        private final int hashCode;
+
+        private Key(K referent, ReferenceQueue<K> queue)
+        {
+            super(referent, queue);
+            this.hashCode = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Object referent = get();
+            return referent != null && referent == ((Key<?>)obj).get();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+}
@@ -18,20 +18,61 @@
 
 package org.mortbay.jetty.alpn;
 
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509ExtendedTrustManager;
 
 import org.eclipse.jetty.alpn.ALPN;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
+import sun.security.ssl.ApplicationProtocols;
+import sun.security.ssl.CachedInformation;
+import sun.security.ssl.CipherSuiteServerProvider;
+import sun.security.ssl.ClientHelloServerProvider;
+import sun.security.ssl.ClientSessionCache;
+import sun.security.ssl.CurvePreference;
+import sun.security.ssl.PinnedPublicKeyVerifier;
+import sun.security.ssl.RawPublicKeys;
+import sun.security.ssl.ClientHelloView;
+import sun.security.ssl.ResumingClientProvider;
+import sun.security.ssl.ResumingServerProvider;
+import sun.security.ssl.ServerKeyCache;
+import sun.security.ssl.SessionState;
+import sun.security.ssl.SessionStore;
+import sun.security.ssl.SessionStores;
+import sun.security.ssl.SessionTicketKey;
+import sun.security.ssl.SessionTicketKeyProvider;
+import sun.security.ssl.SessionTickets;
+import sun.security.ssl.ShardedSessionCache;
+import sun.security.ssl.TrustedChainCache;
 
 public abstract class AbstractALPNTest<T>
 {
@@ -45,11 +86,31 @@ public abstract class AbstractALPNTest<T>
 
     protected abstract SSLSession getSSLSession(SSLResult<T> sslResult, boolean client) throws Exception;
 
+    // The SSLContext shared by the client and the server, or null for the default.
+    protected SSLContext sslContext;
+    // The protocols and cipher suites enabled on the client, or null for the defaults.
+    protected String[] clientProtocols;
+    protected String[] clientCipherSuites;
+    // The server names indicated by the client, or null for the default.
+    protected List<SNIServerName> clientServerNames;
+    // Whether the server requires client authentication.
+    protected boolean needClientAuth;
+
     @Before
     public void prepare() throws Exception
     {
         Assert.assertNull("ALPN classes must be in the bootclasspath.", ALPN.class.getClassLoader());
         ALPN.debug = true;
+        sslContext = null;
+        clientProtocols = null;
+        clientCipherSuites = null;
+        clientServerNames = null;
+        needClientAuth = false;
+    }
+
+    protected SSLContext newSSLContext() throws Exception
+    {
+        return sslContext != null ? sslContext : SSLSupport.newSSLContext();
     }
 
     @Test
@@ -106,6 +167,127 @@ public abstract class AbstractALPNTest<T>
         performTLSClose(sslResult);
     }
 
+    @Test
+    public void testClientHelloServerProvider() throws Exception
+    {
+        final String protocolName = "test";
+        final CountDownLatch latch = new CountDownLatch(2);
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList(protocolName);
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                latch.countDown();
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ClientHelloServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                Assert.fail();
+                return null;
+            }
+
+            @Override
+            public String select(ClientHelloView clientHello, List<String> protocols)
+            {
+                Assert.assertEquals(Arrays.asList(protocolName), clientHello.getApplicationProtocols());
+                Assert.assertEquals(clientHello.getApplicationProtocols(), protocols);
+                Assert.assertNotNull(clientHello.getProtocolVersion());
+                Assert.assertFalse(clientHello.getCipherSuites().isEmpty());
+                Assert.assertTrue(clientHello.getCipherSuites().contains(clientHello.getCipherSuite()));
+                Assert.assertEquals(clientServerNames, clientHello.getServerNames());
+                Assert.assertEquals("www.example.com", clientHello.getHostName());
+                // secp256r1 is enabled by default and offered with the ECC cipher suites.
+                Assert.assertTrue(clientHello.getSupportedGroups().contains(23));
+                latch.countDown();
+                return protocols.get(0);
+            }
+        };
+        clientServerNames = Collections.<SNIServerName>singletonList(new SNIHostName("www.example.com"));
+        SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        performDataExchange(sslResult);
+
+        performTLSClose(sslResult);
+    }
+
+    @Test
+    public void testClientHelloCipherSuiteServerProvider() throws Exception
+    {
+        final AtomicReference<String> selected = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList("h2", "http/1.1");
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+            }
+        };
+        class CombinedServerProvider implements ClientHelloServerProvider, CipherSuiteServerProvider
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                Assert.fail();
+                return null;
+            }
+
+            @Override
+            public String select(ClientHelloView clientHello, List<String> protocols)
+            {
+                selected.set(clientHello.getCipherSuite());
+                return protocols.get(0);
+            }
+        }
+
+        clientProtocols = new String[]{"TLSv1.2"};
+        clientCipherSuites = new String[]{"TLS_RSA_WITH_AES_128_CBC_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"};
+        SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, new CombinedServerProvider());
+        SSLSession session = getSSLSession(sslResult, false);
+        Assert.assertEquals("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256", session.getCipherSuite());
+        Assert.assertEquals(session.getCipherSuite(), selected.get());
+        performTLSClose(sslResult);
+    }
+
     @Test
     public void testServerDoesNotSendALPN() throws Exception
     {
@@ -405,6 +587,1090 @@ public abstract class AbstractALPNTest<T>
         performTLSClose(sslResult);
     }
 
+    @Test
+    public void testServerKeyCache() throws Exception
+    {
+        final String protocolName = "test";
+        final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList(protocolName);
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                latch.get().countDown();
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                latch.get().countDown();
+                return protocols.get(0);
+            }
+        };
+
+        CountingKeyManager keyManager = new CountingKeyManager((X509ExtendedKeyManager)SSLSupport.newKeyManagers()[0]);
+        sslContext = SSLSupport.newSSLContext(new KeyManager[]{keyManager}, SSLSupport.newTrustManagers());
+
+        ServerKeyCache.install(sslContext.getServerSessionContext(), new ServerKeyCache(16, 3600));
+        try
+        {
+            // First TLS handshake populates the cache.
+            latch.set(new CountDownLatch(2));
+            SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, keyManager.privateKeys.get());
+            SSLSession serverSession1 = getSSLSession(sslResult, false);
+            // Invalidate the session to force a full handshake.
+            serverSession1.invalidate();
+            performTLSClose(sslResult);
+
+            // Second TLS handshake uses the cached key.
+            latch.set(new CountDownLatch(2));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            SSLSession serverSession2 = getSSLSession(sslResult, false);
+            Assert.assertNotSame(serverSession1, serverSession2);
+            Assert.assertArrayEquals(serverSession1.getLocalCertificates(), serverSession2.getLocalCertificates());
+            // The key manager has been called only by the first handshake.
+            Assert.assertEquals(1, keyManager.privateKeys.get());
+            Assert.assertEquals(1, keyManager.certificateChains.get());
+
+            performDataExchange(sslResult);
+            performTLSClose(sslResult);
+        }
+        finally
+        {
+            ServerKeyCache.uninstall(sslContext.getServerSessionContext());
+        }
+    }
+
+    @Test
+    public void testServerChainCache() throws Exception
+    {
+        final String protocolName = "test";
+        final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList(protocolName);
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                latch.get().countDown();
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+
+        CountingTrustManager trustManager = new CountingTrustManager((X509ExtendedTrustManager)SSLSupport.newTrustManagers()[0]);
+        sslContext = SSLSupport.newSSLContext(SSLSupport.newKeyManagers(), new TrustManager[]{trustManager});
+        TrustedChainCache chainCache = new TrustedChainCache(16, TimeUnit.MINUTES.toMillis(1));
+        TrustedChainCache.install(sslContext.getClientSessionContext(), chainCache);
+        try
+        {
+            // First TLS handshake validates the server chain.
+            latch.set(new CountDownLatch(1));
+            SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, trustManager.serverChecks.get());
+            Assert.assertEquals(1, chainCache.size());
+            // Invalidate the session to force a full handshake.
+            getSSLSession(sslResult, true).invalidate();
+            performTLSClose(sslResult);
+
+            // Second TLS handshake trusts the cached chain.
+            latch.set(new CountDownLatch(1));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, chainCache.size());
+            Assert.assertNotNull(getSSLSession(sslResult, true).getPeerCertificates());
+            // The trust manager has not been called again.
+            Assert.assertEquals(1, trustManager.serverChecks.get());
+
+            performDataExchange(sslResult);
+            performTLSClose(sslResult);
+        }
+        finally
+        {
+            TrustedChainCache.uninstall(sslContext.getClientSessionContext());
+        }
+        Assert.assertEquals(0, chainCache.size());
+    }
+
+    @Test
+    public void testClientChainCache() throws Exception
+    {
+        final String protocolName = "test";
+        final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList(protocolName);
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                latch.get().countDown();
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+
+        CountingTrustManager trustManager = new CountingTrustManager((X509ExtendedTrustManager)SSLSupport.newTrustManagers()[0]);
+        sslContext = SSLSupport.newSSLContext(SSLSupport.newKeyManagers(), new TrustManager[]{trustManager});
+        needClientAuth = true;
+        TrustedChainCache chainCache = new TrustedChainCache(16, TimeUnit.MINUTES.toMillis(1));
+        TrustedChainCache.install(sslContext.getServerSessionContext(), chainCache);
+        try
+        {
+            // First TLS handshake validates the client chain.
+            latch.set(new CountDownLatch(1));
+            SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, trustManager.clientChecks.get());
+            Assert.assertEquals(1, chainCache.size());
+            // Invalidate the session to force a full handshake.
+            getSSLSession(sslResult, false).invalidate();
+            performTLSClose(sslResult);
+
+            // Second TLS handshake trusts the cached client chain.
+            latch.set(new CountDownLatch(1));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertNotNull(getSSLSession(sslResult, false).getPeerCertificates());
+            Assert.assertEquals(1, trustManager.clientChecks.get());
+            // The server chain is validated by both handshakes, as the
+            // client session context has no cache installed.
+            Assert.assertEquals(2, trustManager.serverChecks.get());
+
+            performDataExchange(sslResult);
+            performTLSClose(sslResult);
+        }
+        finally
+        {
+            TrustedChainCache.uninstall(sslContext.getServerSessionContext());
+        }
+        Assert.assertEquals(0, chainCache.size());
+        Assert.assertNull(TrustedChainCache.get(sslContext.getServerSessionContext()));
+    }
+
+    @Test
+    public void testShardedSessionCache() throws Exception
+    {
+        final String protocolName = "test";
+        final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList(protocolName);
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                latch.get().countDown();
+            }
+        };
+        final AtomicReference<String> resumed = new AtomicReference<>();
+        ALPN.ServerProvider serverProvider = new ResumingServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+
+            @Override
+            public void resumed(String protocol)
+            {
+                resumed.set(protocol);
+            }
+        };
+
+        // First TLS handshake creates the SSLContext.
+        latch.set(new CountDownLatch(1));
+        SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+        Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+        getSSLSession(sslResult, false).invalidate();
+        performTLSClose(sslResult);
+
+        SSLSessionContext sessionContext = sslResult.context.getServerSessionContext();
+        int sessionCacheSize = sessionContext.getSessionCacheSize();
+        ShardedSessionCache cache = new ShardedSessionCache(4);
+        ShardedSessionCache.install(sessionContext, cache);
+        try
+        {
+            // Second TLS handshake is a full handshake, stored in the sharded cache.
+            latch.set(new CountDownLatch(1));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            SSLSession serverSession = getSSLSession(sslResult, false);
+            performTLSClose(sslResult);
+            Assert.assertEquals(1, cache.getSize());
+            Assert.assertNull(resumed.get());
+
+            // Third TLS handshake resumes the session and its protocol from the sharded cache.
+            latch.set(new CountDownLatch(1));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertSame(serverSession, getSSLSession(sslResult, false));
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(protocolName, resumed.get());
+            // The application invalidates the session, which must not be resumed from the cache.
+            serverSession.invalidate();
+            performTLSClose(sslResult);
+
+            // Fourth TLS handshake is a full handshake.
+            latch.set(new CountDownLatch(1));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertNotSame(serverSession, getSSLSession(sslResult, false));
+            performTLSClose(sslResult);
+            Assert.assertEquals(1, cache.getSize());
+
+            // The cache honors the session cache size of the context, one session per shard.
+            sessionContext.setSessionCacheSize(4);
+            for (int i = 0; i < 16; ++i)
+            {
+                // The client does not resume, so the server sessions accumulate.
+                getSSLSession(sslResult, true).invalidate();
+                latch.set(new CountDownLatch(1));
+                sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+                Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+                performTLSClose(sslResult);
+            }
+            Assert.assertTrue(cache.getSize() <= 4);
+        }
+        finally
+        {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            ShardedSessionCache.uninstall(sessionContext);
+        }
+    }
+
+    @Test
+    public void testSessionTicketResumption() throws Exception
+    {
+        final String protocolName = "test";
+        final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList(protocolName);
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                latch.get().countDown();
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+        final SessionTicketKey key = new SessionTicketKey(new byte[16], new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        SessionTicketKeyProvider keys = new SessionTicketKeyProvider()
+        {
+            @Override
+            public SessionTicketKey getEncryptionKey()
+            {
+                return key;
+            }
+
+            @Override
+            public SessionTicketKey getDecryptionKey(byte[] name)
+            {
+                return key.hasName(name) ? key : null;
+            }
+        };
+
+        sslContext = SSLSupport.newSSLContext();
+        SessionTickets.install(sslContext.getServerSessionContext(), keys);
+        SessionTickets.installClient(sslContext.getClientSessionContext());
+        try
+        {
+            // First TLS handshake is a full handshake, and the server issues a ticket.
+            latch.set(new CountDownLatch(1));
+            SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            SSLSession clientSession = getSSLSession(sslResult, true);
+            SSLSession serverSession = getSSLSession(sslResult, false);
+            Assert.assertNotNull(SessionTickets.getTicket(clientSession));
+            // The server forgets the session, so that only the ticket can resume it.
+            serverSession.invalidate();
+            performTLSClose(sslResult);
+
+            // Second TLS handshake resumes the session from the ticket.
+            latch.set(new CountDownLatch(1));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertSame(clientSession, getSSLSession(sslResult, true));
+            SSLSession resumedSession = getSSLSession(sslResult, false);
+            Assert.assertNotSame(serverSession, resumedSession);
+            Assert.assertArrayEquals(serverSession.getId(), resumedSession.getId());
+            performDataExchange(sslResult);
+            performTLSClose(sslResult);
+        }
+        finally
+        {
+            SessionTickets.uninstallClient(sslContext.getClientSessionContext());
+            SessionTickets.uninstall(sslContext.getServerSessionContext());
+        }
+    }
+
+    @Test
+    public void testSessionStoreDoesNotResumeInvalidatedSession() throws Exception
+    {
+        final String protocolName = "test";
+        final AtomicReference<CountDownLatch> latch = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList(protocolName);
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                latch.get().countDown();
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+
+        final Map<ByteBuffer, SessionState> states = new ConcurrentHashMap<>();
+        SessionStore store = new SessionStore()
+        {
+            @Override
+            public SessionState get(byte[] sessionId)
+            {
+                return states.get(ByteBuffer.wrap(sessionId));
+            }
+
+            @Override
+            public void put(byte[] sessionId, SessionState state)
+            {
+                states.put(ByteBuffer.wrap(sessionId.clone()), state);
+            }
+
+            @Override
+            public void remove(byte[] sessionId)
+            {
+                states.remove(ByteBuffer.wrap(sessionId));
+            }
+        };
+
+        sslContext = SSLSupport.newSSLContext();
+        SessionStores.install(sslContext.getServerSessionContext(), store);
+        try
+        {
+            // First TLS handshake stores the session.
+            latch.set(new CountDownLatch(1));
+            SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            SSLSession serverSession = getSSLSession(sslResult, false);
+            Assert.assertNotNull(states.get(ByteBuffer.wrap(serverSession.getId())));
+            // The application invalidates the session, which must not be resumed from the store.
+            serverSession.invalidate();
+            performTLSClose(sslResult);
+
+            // Second TLS handshake is a full handshake.
+            latch.set(new CountDownLatch(1));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertTrue(latch.get().await(5, TimeUnit.SECONDS));
+            Assert.assertFalse(Arrays.equals(serverSession.getId(), getSSLSession(sslResult, false).getId()));
+            Assert.assertNull(states.get(ByteBuffer.wrap(serverSession.getId())));
+            performTLSClose(sslResult);
+        }
+        finally
+        {
+            SessionStores.uninstall(sslContext.getServerSessionContext());
+        }
+    }
+
+    @Test
+    public void testResumedApplicationProtocol() throws Exception
+    {
+        final String protocolName = "test";
+        final AtomicInteger selected = new AtomicInteger();
+        final AtomicInteger resumed = new AtomicInteger();
+        final AtomicInteger serverSelected = new AtomicInteger();
+        final AtomicInteger serverResumed = new AtomicInteger();
+        ALPN.ClientProvider clientProvider = new ResumingClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList(protocolName, "other");
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                selected.incrementAndGet();
+            }
+
+            @Override
+            public void resumed(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                resumed.incrementAndGet();
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ResumingServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                serverSelected.incrementAndGet();
+                return protocols.get(0);
+            }
+
+            @Override
+            public void resumed(String protocol)
+            {
+                Assert.assertEquals(protocolName, protocol);
+                serverResumed.incrementAndGet();
+            }
+        };
+
+        // First TLS handshake is a full handshake.
+        SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+        SSLSession serverSession = getSSLSession(sslResult, false);
+        Assert.assertEquals(protocolName, ApplicationProtocols.get(serverSession));
+        Assert.assertEquals(protocolName, ApplicationProtocols.get(getSSLSession(sslResult, true)));
+        performTLSClose(sslResult);
+        Assert.assertEquals(1, serverSelected.get());
+        Assert.assertEquals(1, selected.get());
+
+        // Second TLS handshake resumes the session and its protocol, without selection.
+        sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+        Assert.assertSame(serverSession, getSSLSession(sslResult, false));
+        performTLSClose(sslResult);
+        Assert.assertEquals(1, serverSelected.get());
+        Assert.assertEquals(1, serverResumed.get());
+        Assert.assertEquals(1, selected.get());
+        Assert.assertEquals(1, resumed.get());
+    }
+
+    @Test
+    public void testClientSessionCache() throws Exception
+    {
+        final AtomicReference<List<String>> offer = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return offer.get();
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals(offer.get().get(0), protocol);
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+
+        // First TLS handshake creates the SSLContext.
+        offer.set(Arrays.asList("h2"));
+        SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+        getSSLSession(sslResult, false).invalidate();
+        performTLSClose(sslResult);
+
+        SSLSessionContext sessionContext = sslResult.context.getClientSessionContext();
+        ClientSessionCache cache = new ClientSessionCache(16, 4, 60);
+        ClientSessionCache.install(sessionContext, cache);
+        try
+        {
+            // Full handshake offering h2.
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            SSLSession h2Session = getSSLSession(sslResult, false);
+            performTLSClose(sslResult);
+
+            // Full handshake offering http/1.1: the h2 session is not resumed.
+            offer.set(Arrays.asList("http/1.1"));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            SSLSession http11Session = getSSLSession(sslResult, false);
+            Assert.assertNotSame(h2Session, http11Session);
+            performTLSClose(sslResult);
+            Assert.assertEquals(2, cache.getSize());
+
+            // Offering h2 again resumes the h2 session.
+            offer.set(Arrays.asList("h2"));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertSame(h2Session, getSSLSession(sslResult, false));
+            performTLSClose(sslResult);
+
+            // Offering http/1.1 again resumes the http/1.1 session.
+            offer.set(Arrays.asList("http/1.1"));
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            Assert.assertSame(http11Session, getSSLSession(sslResult, false));
+            performTLSClose(sslResult);
+            Assert.assertEquals(2, cache.getHits());
+        }
+        finally
+        {
+            ClientSessionCache.uninstall(sessionContext);
+        }
+    }
+
+    @Test
+    public void testCachedInformation() throws Exception
+    {
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList("h2");
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals("h2", protocol);
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+
+        // First TLS handshake creates the SSLContext.
+        SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+        getSSLSession(sslResult, false).invalidate();
+        performTLSClose(sslResult);
+
+        SSLSessionContext clientContext = sslResult.context.getClientSessionContext();
+        SSLSessionContext serverContext = sslResult.context.getServerSessionContext();
+        CachedInformation clientInfo = new CachedInformation(16);
+        CachedInformation serverInfo = new CachedInformation(16);
+        CachedInformation.install(clientContext, clientInfo);
+        CachedInformation.install(serverContext, serverInfo);
+        try
+        {
+            // Full handshake, the client caches the server chain.
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            SSLSession session = getSSLSession(sslResult, true);
+            Certificate[] chain = session.getPeerCertificates();
+            getSSLSession(sslResult, false).invalidate();
+            performTLSClose(sslResult);
+            Assert.assertEquals(0, clientInfo.getHits());
+
+            // Full handshake, the server sends the hash of the chain.
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            session = getSSLSession(sslResult, true);
+            Assert.assertArrayEquals(chain, session.getPeerCertificates());
+            performTLSClose(sslResult);
+            Assert.assertEquals(1, clientInfo.getHits());
+            Assert.assertEquals(1, serverInfo.getHits());
+        }
+        finally
+        {
+            CachedInformation.uninstall(clientContext);
+            CachedInformation.uninstall(serverContext);
+        }
+    }
+
+    @Test
+    public void testRawPublicKey() throws Exception
+    {
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList("h2");
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals("h2", protocol);
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+
+        // First TLS handshake creates the SSLContext.
+        SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+        Certificate[] chain = getSSLSession(sslResult, true).getPeerCertificates();
+        getSSLSession(sslResult, false).invalidate();
+        performTLSClose(sslResult);
+
+        SSLSessionContext clientContext = sslResult.context.getClientSessionContext();
+        SSLSessionContext serverContext = sslResult.context.getServerSessionContext();
+        PinnedPublicKeyVerifier verifier = new PinnedPublicKeyVerifier(Arrays.asList(PinnedPublicKeyVerifier.pin(chain[0].getPublicKey())));
+        RawPublicKeys clientKeys = new RawPublicKeys(verifier);
+        RawPublicKeys serverKeys = new RawPublicKeys(null);
+        RawPublicKeys.install(clientContext, clientKeys);
+        RawPublicKeys.install(serverContext, serverKeys);
+        try
+        {
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            SSLSession session = getSSLSession(sslResult, true);
+            performTLSClose(sslResult);
+            Assert.assertEquals(chain[0].getPublicKey(), RawPublicKeys.getPeerPublicKey(session));
+            try
+            {
+                session.getPeerCertificates();
+                Assert.fail();
+            }
+            catch (SSLPeerUnverifiedException x)
+            {
+                // Expected
+            }
+            Assert.assertEquals(1, clientKeys.getUses());
+            Assert.assertEquals(1, serverKeys.getUses());
+        }
+        finally
+        {
+            RawPublicKeys.uninstall(clientContext);
+            RawPublicKeys.uninstall(serverContext);
+        }
+    }
+
+    @Test
+    public void testCurvePreferenceCache() throws Exception
+    {
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList("h2");
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                Assert.assertEquals("h2", protocol);
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+
+        sslContext = SSLSupport.newSSLContext();
+        CurvePreference preference = new CurvePreference(Arrays.asList("secp384r1", "secp256r1"), 16);
+        CurvePreference.install(sslContext.getServerSessionContext(), preference);
+        try
+        {
+            Assert.assertEquals(Arrays.asList("secp384r1", "secp256r1"), preference.getPreference());
+
+            SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+            SSLSession session = getSSLSession(sslResult, false);
+            session.invalidate();
+            performTLSClose(sslResult);
+            // Only ECDHE cipher suites choose a curve.
+            Assume.assumeTrue(session.getCipherSuite().contains("_ECDHE_"));
+            Assert.assertEquals(1, preference.getMisses());
+
+            // The same client curves hit the cache.
+            sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+            performTLSClose(sslResult);
+            Assert.assertEquals(1, preference.getMisses());
+            Assert.assertEquals(1, preference.getHits());
+        }
+        finally
+        {
+            CurvePreference.uninstall(sslContext.getServerSessionContext());
+        }
+    }
+
+    @Test
+    public void testHTTP2BlackListedCipherSuiteIsDeferred() throws Exception
+    {
+        final AtomicReference<List<String>> permitted = new AtomicReference<>();
+        final AtomicReference<String> selected = new AtomicReference<>();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList("h2", "http/1.1");
+            }
+
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+                selected.set(protocol);
+            }
+        };
+        ALPN.ServerProvider serverProvider = new CipherSuiteServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+                Assert.fail();
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                permitted.set(protocols);
+                return protocols.get(0);
+            }
+        };
+
+        // The client prefers a blacklisted cipher suite: the server
+        // defers it and chooses the suite permitted for h2.
+        clientProtocols = new String[]{"TLSv1.2"};
+        clientCipherSuites = new String[]{"TLS_RSA_WITH_AES_128_CBC_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"};
+        SSLResult<T> sslResult = performTLSHandshake(null, clientProvider, serverProvider);
+        SSLSession session = getSSLSession(sslResult, false);
+        Assert.assertEquals("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256", session.getCipherSuite());
+        Assert.assertEquals(Arrays.asList("h2", "http/1.1"), permitted.get());
+        Assert.assertEquals("h2", selected.get());
+        session.invalidate();
+        performTLSClose(sslResult);
+
+        // The client only offers a blacklisted cipher suite:
+        // h2 is not permitted and the server falls back to http/1.1.
+        clientCipherSuites = new String[]{"TLS_RSA_WITH_AES_128_CBC_SHA256"};
+        sslResult = performTLSHandshake(sslResult, clientProvider, serverProvider);
+        session = getSSLSession(sslResult, false);
+        Assert.assertEquals("TLS_RSA_WITH_AES_128_CBC_SHA256", session.getCipherSuite());
+        Assert.assertEquals(Arrays.asList("http/1.1"), permitted.get());
+        Assert.assertEquals("http/1.1", selected.get());
+        performTLSClose(sslResult);
+    }
+
+    private static class CountingKeyManager extends X509ExtendedKeyManager
+    {
+        private final AtomicInteger privateKeys = new AtomicInteger();
+        private final AtomicInteger certificateChains = new AtomicInteger();
+        private final X509ExtendedKeyManager delegate;
+
+        private CountingKeyManager(X509ExtendedKeyManager delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getClientAliases(String keyType, Principal[] issuers)
+        {
+            return delegate.getClientAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseClientAlias(String[] keyTypes, Principal[] issuers, Socket socket)
+        {
+            return delegate.chooseClientAlias(keyTypes, issuers, socket);
+        }
+
+        @Override
+        public String chooseEngineClientAlias(String[] keyTypes, Principal[] issuers, SSLEngine engine)
+        {
+            return delegate.chooseEngineClientAlias(keyTypes, issuers, engine);
+        }
+
+        @Override
+        public String[] getServerAliases(String keyType, Principal[] issuers)
+        {
+            return delegate.getServerAliases(keyType, issuers);
+        }
+
+        @Override
+        public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket)
+        {
+            return delegate.chooseServerAlias(keyType, issuers, socket);
+        }
+
+        @Override
+        public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine)
+        {
+            return delegate.chooseEngineServerAlias(keyType, issuers, engine);
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias)
+        {
+            certificateChains.incrementAndGet();
+            return delegate.getCertificateChain(alias);
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String alias)
+        {
+            privateKeys.incrementAndGet();
+            return delegate.getPrivateKey(alias);
+        }
+    }
+
+    private static class CountingTrustManager extends X509ExtendedTrustManager
+    {
+        private final AtomicInteger clientChecks = new AtomicInteger();
+        private final AtomicInteger serverChecks = new AtomicInteger();
+        private final X509ExtendedTrustManager delegate;
+
+        private CountingTrustManager(X509ExtendedTrustManager delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException
+        {
+            clientChecks.incrementAndGet();
+            delegate.checkClientTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException
+        {
+            serverChecks.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType, socket);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException
+        {
+            clientChecks.incrementAndGet();
+            delegate.checkClientTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException
+        {
+            serverChecks.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType, engine);
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException
+        {
+            clientChecks.incrementAndGet();
+            delegate.checkClientTrusted(chain, authType);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException
+        {
+            serverChecks.incrementAndGet();
+            delegate.checkServerTrusted(chain, authType);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return delegate.getAcceptedIssuers();
+        }
+    }
+
     public static class SSLResult<S>
     {
         public SSLContext context;
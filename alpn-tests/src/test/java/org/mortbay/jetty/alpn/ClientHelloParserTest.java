@@ -0,0 +1,181 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import org.eclipse.jetty.alpn.ALPN;
+import org.junit.Assert;
+import org.junit.Test;
+import sun.security.ssl.ClientHelloParser;
+
+public class ClientHelloParserTest
+{
+    private static final int EXT_ALPN = 16;
+
+    @Test
+    public void testParseClientHello() throws Exception
+    {
+        ByteBuffer buffer = clientHello("www.example.com", Arrays.asList("h2", "http/1.1"));
+        int position = buffer.position();
+        int limit = buffer.limit();
+
+        ClientHelloParser parser = new ClientHelloParser();
+        Assert.assertSame(ClientHelloParser.Result.CLIENT_HELLO, parser.parse(buffer));
+        Assert.assertEquals(position, buffer.position());
+        Assert.assertEquals(limit, buffer.limit());
+
+        Assert.assertEquals("TLSv1", parser.getProtocolVersionName());
+        Assert.assertTrue(parser.hasServerName());
+        Assert.assertEquals("www.example.com", parser.getServerName());
+        Assert.assertEquals(2, parser.getApplicationProtocolCount());
+        Assert.assertEquals("h2", parser.getApplicationProtocol(0));
+        Assert.assertEquals("http/1.1", parser.getApplicationProtocol(1));
+        Assert.assertTrue(parser.offersApplicationProtocol("http/1.1"));
+        Assert.assertFalse(parser.offersApplicationProtocol("http/1.0"));
+        Assert.assertTrue(parser.getCipherSuiteCount() > 0);
+        for (int i = 0; i < parser.getCipherSuiteCount(); ++i)
+            Assert.assertNotNull(parser.getCipherSuiteName(i));
+    }
+
+    @Test
+    public void testParserIsReusable() throws Exception
+    {
+        ClientHelloParser parser = new ClientHelloParser();
+        Assert.assertSame(ClientHelloParser.Result.CLIENT_HELLO, parser.parse(clientHello("www.example.com", Collections.singletonList("h2"))));
+        Assert.assertEquals("www.example.com", parser.getServerName());
+
+        Assert.assertSame(ClientHelloParser.Result.CLIENT_HELLO, parser.parse(clientHello(null, null)));
+        Assert.assertFalse(parser.hasServerName());
+        Assert.assertNull(parser.getServerName());
+        Assert.assertEquals(0, parser.getApplicationProtocolCount());
+        Assert.assertFalse(parser.offersApplicationProtocol("h2"));
+    }
+
+    @Test
+    public void testUnderflow() throws Exception
+    {
+        ByteBuffer buffer = clientHello("www.example.com", Collections.singletonList("h2"));
+        ClientHelloParser parser = new ClientHelloParser();
+        for (int length = 0; length < buffer.remaining(); ++length)
+        {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + length);
+            Assert.assertSame(ClientHelloParser.Result.UNDERFLOW, parser.parse(slice));
+        }
+    }
+
+    @Test
+    public void testNotClientHello() throws Exception
+    {
+        ClientHelloParser parser = new ClientHelloParser();
+        ByteBuffer buffer = ByteBuffer.wrap("GET / HTTP/1.1\r\n\r\n".getBytes("US-ASCII"));
+        Assert.assertSame(ClientHelloParser.Result.UNSUPPORTED, parser.parse(buffer));
+    }
+
+    @Test
+    public void testFailedParseResetsParser() throws Exception
+    {
+        ClientHelloParser parser = new ClientHelloParser();
+        Assert.assertSame(ClientHelloParser.Result.CLIENT_HELLO, parser.parse(clientHello("www.example.com", Collections.singletonList("h2"))));
+
+        // The server name is parsed before the empty protocol name is rejected.
+        ByteBuffer buffer = SSLSupport.withExtension(clientHello("www.example.com", null), EXT_ALPN, new byte[]{0, 1, 0});
+        Assert.assertSame(ClientHelloParser.Result.UNSUPPORTED, parser.parse(buffer));
+        Assert.assertFalse(parser.hasServerName());
+        Assert.assertNull(parser.getServerName());
+        Assert.assertEquals(0, parser.getCipherSuiteCount());
+        Assert.assertEquals(0, parser.getApplicationProtocolCount());
+        Assert.assertFalse(parser.offersApplicationProtocol("h2"));
+    }
+
+    @Test
+    public void testMalformedALPNExtensionFailsHandshake() throws Exception
+    {
+        ByteBuffer buffer = SSLSupport.withExtension(clientHello("www.example.com", null), EXT_ALPN, new byte[]{0, 1, 0});
+        SSLEngine server = SSLSupport.newSSLContext().createSSLEngine();
+        server.setUseClientMode(false);
+        try
+        {
+            server.unwrap(buffer, ByteBuffer.allocate(server.getSession().getApplicationBufferSize()));
+            Runnable task;
+            while ((task = server.getDelegatedTask()) != null)
+                task.run();
+            server.wrap(ByteBuffer.allocate(0), ByteBuffer.allocate(server.getSession().getPacketBufferSize()));
+            Assert.fail();
+        }
+        catch (SSLException x)
+        {
+            // Expected, ALPNExtension rejects empty protocol names.
+        }
+    }
+
+    private ByteBuffer clientHello(String host, final List<String> protocols) throws Exception
+    {
+        SSLContext sslContext = SSLSupport.newSSLContext();
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(true);
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setServerNames(host == null ? Collections.<SNIServerName>emptyList() : Collections.<SNIServerName>singletonList(new SNIHostName(host)));
+        engine.setSSLParameters(parameters);
+        if (protocols != null)
+        {
+            ALPN.put(engine, new ALPN.ClientProvider()
+            {
+                @Override
+                public List<String> protocols()
+                {
+                    return protocols;
+                }
+
+                @Override
+                public void unsupported()
+                {
+                }
+
+                @Override
+                public void selected(String protocol)
+                {
+                }
+            });
+        }
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            SSLEngineResult result = engine.wrap(ByteBuffer.allocate(0), buffer);
+            Assert.assertSame(SSLEngineResult.Status.OK, result.getStatus());
+            buffer.flip();
+            return buffer;
+        }
+        finally
+        {
+            ALPN.remove(engine);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+
+import org.eclipse.jetty.alpn.ALPN;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import sun.security.ssl.DistributedSessionStore;
+import sun.security.ssl.SessionState;
+import sun.security.ssl.SessionTicketKey;
+
+public class DistributedSessionStoreTest
+{
+    private final SessionTicketKey key = new SessionTicketKey(new byte[16], new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+    private final List<DistributedSessionStore> stores = new ArrayList<>();
+    private LoopbackRemoteSessionStore remote;
+
+    @Before
+    public void prepare()
+    {
+        remote = new LoopbackRemoteSessionStore();
+    }
+
+    @After
+    public void dispose()
+    {
+        for (DistributedSessionStore store : stores)
+            store.close();
+        remote.close();
+    }
+
+    private DistributedSessionStore newStore(long timeout, int batchSize, long batchDelay)
+    {
+        return newStore(5, timeout, batchSize, batchDelay);
+    }
+
+    private DistributedSessionStore newStore(int nearCacheTimeout, long timeout, int batchSize, long batchDelay)
+    {
+        DistributedSessionStore store = new DistributedSessionStore(remote, key, 64, nearCacheTimeout, timeout, batchSize, batchDelay);
+        stores.add(store);
+        return store;
+    }
+
+    @Test
+    public void testSessionStoredByOneServerIsFoundByAnother() throws Exception
+    {
+        SSLSession session = handshake();
+        DistributedSessionStore server1 = newStore(1000, 16, 1);
+        DistributedSessionStore server2 = newStore(1000, 16, 1);
+
+        server1.put(session.getId(), SessionState.from(session, "h2"));
+        server1.close();
+
+        SessionState state = server2.get(session.getId());
+        Assert.assertNotNull(state);
+        Assert.assertEquals("h2", state.getApplicationProtocol());
+        Assert.assertEquals(1, server2.getRemoteHits());
+
+        // The second lookup is served by the near-cache.
+        Assert.assertNotNull(server2.get(session.getId()));
+        Assert.assertEquals(1, server2.getNearHits());
+    }
+
+    @Test
+    public void testSlowRemoteStoreDoesNotBlockBeyondTimeout() throws Exception
+    {
+        SSLSession session = handshake();
+        DistributedSessionStore server1 = newStore(1000, 16, 1);
+        server1.put(session.getId(), SessionState.from(session, null));
+        server1.close();
+
+        remote.setLatency(5000);
+        DistributedSessionStore server2 = newStore(100, 16, 1);
+        long start = System.nanoTime();
+        Assert.assertNull(server2.get(session.getId()));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(elapsed < 1000);
+        Assert.assertEquals(1, server2.getTimeouts());
+    }
+
+    @Test
+    public void testFailingRemoteStoreMisses() throws Exception
+    {
+        remote.setFailureRatio(1);
+        DistributedSessionStore store = newStore(1000, 16, 1);
+        Assert.assertNull(store.get(new byte[32]));
+        Assert.assertEquals(1, store.getFailures());
+    }
+
+    @Test
+    public void testConcurrentLookupsAreBatched() throws Exception
+    {
+        remote.setLatency(10);
+        int lookups = 16;
+        DistributedSessionStore store = newStore(5000, lookups, 1000);
+        CountDownLatch latch = new CountDownLatch(lookups);
+        for (int i = 0; i < lookups; ++i)
+        {
+            byte[] sessionId = new byte[32];
+            sessionId[0] = (byte)i;
+            new Thread(() ->
+            {
+                store.get(sessionId);
+                latch.countDown();
+            }).start();
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(lookups, store.getMisses());
+        Assert.assertEquals(1, remote.getLookupBatches());
+    }
+
+    @Test
+    public void testSessionRemovedByOneServerExpiresFromOtherNearCaches() throws Exception
+    {
+        SSLSession session = handshake();
+        DistributedSessionStore server1 = newStore(1000, 16, 1);
+        DistributedSessionStore server2 = newStore(1, 1000, 16, 1);
+
+        server1.put(session.getId(), SessionState.from(session, null));
+        server1.close();
+        Assert.assertNotNull(server2.get(session.getId()));
+
+        // Another server of the cluster invalidates the session.
+        DistributedSessionStore server3 = newStore(1000, 16, 1);
+        server3.remove(session.getId());
+        server3.close();
+
+        TimeUnit.MILLISECONDS.sleep(1500);
+        Assert.assertNull(server2.get(session.getId()));
+        Assert.assertEquals(1, server2.getMisses());
+    }
+
+    @Test
+    public void testFlushNeverExceedsBatchSize() throws Exception
+    {
+        remote.setLatency(10);
+        int lookups = 64;
+        int batchSize = 4;
+        DistributedSessionStore store = newStore(5000, batchSize, 1000);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(lookups);
+        for (int i = 0; i < lookups; ++i)
+        {
+            byte[] sessionId = new byte[32];
+            sessionId[0] = (byte)i;
+            new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                    store.get(sessionId);
+                    store.remove(sessionId);
+                }
+                catch (InterruptedException x)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                latch.countDown();
+            }).start();
+        }
+        start.countDown();
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        store.close();
+        Assert.assertEquals(lookups, store.getMisses());
+        Assert.assertTrue(remote.getMaxBatchSize() <= batchSize);
+    }
+
+    private SSLSession handshake() throws Exception
+    {
+        SSLEngineALPNTest harness = new SSLEngineALPNTest();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList("h2");
+            }
+
+            @Override
+            public void unsupported()
+            {
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+        AbstractALPNTest.SSLResult<SSLEngine> sslResult = harness.performTLSHandshake(null, clientProvider, serverProvider);
+        SSLSession session = harness.getSSLSession(sslResult, false);
+        harness.performTLSClose(sslResult);
+        return session;
+    }
+}
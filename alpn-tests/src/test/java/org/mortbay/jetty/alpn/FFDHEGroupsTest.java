@@ -0,0 +1,82 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.math.BigInteger;
+import javax.crypto.spec.DHParameterSpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sun.security.ssl.FFDHEGroups;
+
+public class FFDHEGroupsTest
+{
+    @Test
+    public void testParametersAreSafePrimes() throws Exception
+    {
+        int[] sizes = new int[]{2048, 3072, 4096, 6144, 8192};
+        for (int i = 0; i < sizes.length; ++i)
+        {
+            DHParameterSpec params = FFDHEGroups.getParameters(FFDHEGroups.FFDHE2048 + i);
+            BigInteger p = params.getP();
+            Assert.assertEquals(sizes[i], p.bitLength());
+            Assert.assertEquals(BigInteger.valueOf(2), params.getG());
+            // The 64 high and low bits of the RFC 7919 primes are all ones.
+            BigInteger ones = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+            Assert.assertEquals(ones, p.shiftRight(sizes[i] - 64));
+            Assert.assertEquals(ones, p.and(ones));
+            Assert.assertTrue(p.isProbablePrime(2));
+            Assert.assertTrue(p.shiftRight(1).isProbablePrime(2));
+        }
+        Assert.assertNull(FFDHEGroups.getParameters(261));
+    }
+
+    @Test
+    public void testCheapestGroupIsSelected() throws Exception
+    {
+        // secp256r1, ffdhe4096, ffdhe3072.
+        int[] groups = new int[]{23, FFDHEGroups.FFDHE4096, FFDHEGroups.FFDHE3072};
+        Assert.assertTrue(FFDHEGroups.isOffered(groups));
+        Assert.assertEquals(FFDHEGroups.FFDHE3072, FFDHEGroups.select(groups));
+    }
+
+    @Test
+    public void testUnknownGroupIsOfferedButNotSelected() throws Exception
+    {
+        int[] groups = new int[]{23, 511};
+        Assert.assertTrue(FFDHEGroups.isOffered(groups));
+        Assert.assertEquals(-1, FFDHEGroups.select(groups));
+    }
+
+    @Test
+    public void testNoGroupOffered() throws Exception
+    {
+        int[] groups = new int[]{23, 24, 25};
+        Assert.assertFalse(FFDHEGroups.isOffered(groups));
+        Assert.assertEquals(-1, FFDHEGroups.select(groups));
+    }
+
+    @Test
+    public void testGroupNames() throws Exception
+    {
+        Assert.assertEquals(FFDHEGroups.FFDHE2048, FFDHEGroups.getGroup("ffdhe2048"));
+        Assert.assertEquals(FFDHEGroups.FFDHE8192, FFDHEGroups.getGroup("FFDHE8192"));
+        Assert.assertEquals(-1, FFDHEGroups.getGroup("secp256r1"));
+    }
+}
@@ -0,0 +1,51 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sun.security.ssl.HTTP2Cipher;
+
+public class HTTP2CipherTest
+{
+    @Test
+    public void testBlackListedCiphers() throws Exception
+    {
+        Assert.assertTrue(HTTP2Cipher.isBlackListCipher("TLS_RSA_WITH_AES_128_CBC_SHA"));
+        Assert.assertTrue(HTTP2Cipher.isBlackListCipher("TLS_RSA_WITH_AES_128_GCM_SHA256"));
+        Assert.assertTrue(HTTP2Cipher.isBlackListCipher("TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256"));
+        Assert.assertTrue(HTTP2Cipher.isBlackListCipher("TLS_ECDH_ECDSA_WITH_AES_128_GCM_SHA256"));
+        Assert.assertTrue(HTTP2Cipher.isBlackListCipher("TLS_DH_anon_WITH_AES_128_GCM_SHA256"));
+        // JDK names with the SSL_ prefix.
+        Assert.assertTrue(HTTP2Cipher.isBlackListCipher("SSL_RSA_WITH_3DES_EDE_CBC_SHA"));
+        // Listed in RFC 7540 but not supported by the JDK.
+        Assert.assertTrue(HTTP2Cipher.isBlackListCipher("TLS_RSA_WITH_ARIA_128_GCM_SHA256"));
+        Assert.assertTrue(HTTP2Cipher.isBlackListCipher("TLS_PSK_WITH_AES_128_CCM_8"));
+        Assert.assertFalse(HTTP2Cipher.isBlackListCipher("TLS_UNKNOWN_CIPHER"));
+    }
+
+    @Test
+    public void testPermittedCiphers() throws Exception
+    {
+        Assert.assertFalse(HTTP2Cipher.isBlackListCipher("TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"));
+        Assert.assertFalse(HTTP2Cipher.isBlackListCipher("TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384"));
+        Assert.assertFalse(HTTP2Cipher.isBlackListCipher("TLS_DHE_RSA_WITH_AES_128_GCM_SHA256"));
+        Assert.assertFalse(HTTP2Cipher.isBlackListCipher("TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256"));
+    }
+}
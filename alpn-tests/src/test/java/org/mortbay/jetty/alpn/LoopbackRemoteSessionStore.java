@@ -0,0 +1,131 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import sun.security.ssl.RemoteSessionStore;
+
+/**
+ * <p>A {@link RemoteSessionStore} that keeps the sessions in memory and
+ * replies after a configurable latency, failing a configurable ratio of
+ * the operations, to stand in for a remote store in tests.</p>
+ */
+public class LoopbackRemoteSessionStore implements RemoteSessionStore, AutoCloseable
+{
+    private final ConcurrentMap<ByteBuffer, byte[]> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger lookupBatches = new AtomicInteger();
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+    private volatile long latency;
+    private volatile double failureRatio;
+
+    public void setLatency(long latency)
+    {
+        this.latency = latency;
+    }
+
+    public void setFailureRatio(double failureRatio)
+    {
+        this.failureRatio = failureRatio;
+    }
+
+    public int getLookupBatches()
+    {
+        return lookupBatches.get();
+    }
+
+    public int getMaxBatchSize()
+    {
+        return maxBatchSize.get();
+    }
+
+    @Override
+    public CompletableFuture<List<byte[]>> getAll(List<byte[]> sessionIds)
+    {
+        lookupBatches.incrementAndGet();
+        maxBatchSize.accumulateAndGet(sessionIds.size(), Math::max);
+        return reply(() ->
+        {
+            List<byte[]> values = new ArrayList<>(sessionIds.size());
+            for (byte[] sessionId : sessionIds)
+                values.add(sessions.get(ByteBuffer.wrap(sessionId)));
+            return values;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putAll(List<byte[]> sessionIds, List<byte[]> values)
+    {
+        maxBatchSize.accumulateAndGet(sessionIds.size(), Math::max);
+        return reply(() ->
+        {
+            for (int i = 0; i < sessionIds.size(); ++i)
+                sessions.put(ByteBuffer.wrap(sessionIds.get(i)), values.get(i));
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAll(List<byte[]> sessionIds)
+    {
+        maxBatchSize.accumulateAndGet(sessionIds.size(), Math::max);
+        return reply(() ->
+        {
+            for (byte[] sessionId : sessionIds)
+                sessions.remove(ByteBuffer.wrap(sessionId));
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> reply(Operation<T> operation)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        boolean fail = ThreadLocalRandom.current().nextDouble() < failureRatio;
+        scheduler.schedule(() ->
+        {
+            if (fail)
+                result.completeExceptionally(new IllegalStateException("Simulated failure"));
+            else
+                result.complete(operation.perform());
+        }, latency, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    @Override
+    public void close()
+    {
+        scheduler.shutdownNow();
+    }
+
+    private interface Operation<T>
+    {
+        T perform();
+    }
+}
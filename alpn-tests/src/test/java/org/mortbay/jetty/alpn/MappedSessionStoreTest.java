@@ -0,0 +1,177 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+
+import org.eclipse.jetty.alpn.ALPN;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import sun.security.ssl.MappedSessionStore;
+import sun.security.ssl.SessionState;
+import sun.security.ssl.SessionTicketKey;
+
+public class MappedSessionStoreTest
+{
+    private final SessionTicketKey key = new SessionTicketKey(new byte[16], new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+    private Path file;
+
+    @Before
+    public void prepare() throws Exception
+    {
+        file = Files.createTempFile("sessions", ".store");
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testSessionSurvivesRestart() throws Exception
+    {
+        SSLSession session = handshake();
+        byte[] sessionId = session.getId();
+
+        MappedSessionStore store = new MappedSessionStore(file, 64, 4096, key);
+        store.put(sessionId, SessionState.from(session, "h2"));
+        store.close();
+
+        // A new store on the same file, as after a restart.
+        store = new MappedSessionStore(file, 64, 4096, key);
+        SessionState state = store.get(sessionId);
+        Assert.assertNotNull(state);
+        Assert.assertEquals(session.getCipherSuite(), state.getCipherSuite());
+        Assert.assertEquals("h2", state.getApplicationProtocol());
+
+        store.remove(sessionId);
+        Assert.assertNull(store.get(sessionId));
+        store.close();
+    }
+
+    @Test
+    public void testDifferentKeyDoesNotDecrypt() throws Exception
+    {
+        SSLSession session = handshake();
+        MappedSessionStore store = new MappedSessionStore(file, 64, 4096, key);
+        store.put(session.getId(), SessionState.from(session, null));
+        store.close();
+
+        SessionTicketKey otherKey = new SessionTicketKey(new byte[]{1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1}, new byte[16]);
+        store = new MappedSessionStore(file, 64, 4096, otherKey);
+        Assert.assertNull(store.get(session.getId()));
+        store.close();
+    }
+
+    @Test
+    public void testStateMovedToAnotherSessionIdDoesNotDecrypt() throws Exception
+    {
+        SSLSession session = handshake();
+        byte[] sessionId = new byte[32];
+        Arrays.fill(sessionId, (byte)1);
+        MappedSessionStore store = new MappedSessionStore(file, MappedSessionStore.PROBES, 4096, key);
+        store.put(sessionId, SessionState.from(session, null));
+        store.close();
+
+        // Rewrite the session id of the slot, keeping the encrypted state.
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] otherSessionId = new byte[32];
+        Arrays.fill(otherSessionId, (byte)2);
+        boolean rewritten = false;
+        for (int slot = 0; slot < MappedSessionStore.PROBES; ++slot)
+        {
+            int offset = 16 + slot * 4096;
+            if (Arrays.equals(sessionId, Arrays.copyOfRange(bytes, offset + 1, offset + 1 + 32)))
+            {
+                System.arraycopy(otherSessionId, 0, bytes, offset + 1, 32);
+                rewritten = true;
+            }
+        }
+        Assert.assertTrue(rewritten);
+        Files.write(file, bytes);
+
+        store = new MappedSessionStore(file, MappedSessionStore.PROBES, 4096, key);
+        Assert.assertNull(store.get(otherSessionId));
+        store.close();
+    }
+
+    @Test
+    public void testFullSlotsEvictOldestSession() throws Exception
+    {
+        SSLSession session = handshake();
+        SessionState state = SessionState.from(session, null);
+        MappedSessionStore store = new MappedSessionStore(file, MappedSessionStore.PROBES, 4096, key);
+        for (int i = 0; i < 4 * MappedSessionStore.PROBES; ++i)
+        {
+            byte[] sessionId = new byte[32];
+            sessionId[0] = (byte)i;
+            store.put(sessionId, state);
+            Assert.assertNotNull(store.get(sessionId));
+        }
+        store.close();
+    }
+
+    private SSLSession handshake() throws Exception
+    {
+        SSLEngineALPNTest harness = new SSLEngineALPNTest();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList("h2");
+            }
+
+            @Override
+            public void unsupported()
+            {
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+        AbstractALPNTest.SSLResult<SSLEngine> sslResult = harness.performTLSHandshake(null, clientProvider, serverProvider);
+        SSLSession session = harness.getSSLSession(sslResult, false);
+        harness.performTLSClose(sslResult);
+        return session;
+    }
+}
@@ -0,0 +1,531 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import sun.security.ssl.OCSPFetcher;
+import sun.security.ssl.OCSPStapler;
+import sun.security.ssl.RevocationCache;
+import sun.security.tools.keytool.CertAndKeyGen;
+import sun.security.util.DerOutputStream;
+import sun.security.util.DerValue;
+import sun.security.util.ObjectIdentifier;
+import sun.security.x509.AlgorithmId;
+import sun.security.x509.X500Name;
+import sun.security.x509.X509CertImpl;
+import sun.security.x509.X509CertInfo;
+
+public class OCSPStaplerTest
+{
+    private static final int EXT_STATUS_REQUEST = 5;
+    private static final int HT_CERTIFICATE = 11;
+    private static final int HT_CERTIFICATE_STATUS = 22;
+    // OCSPResponse { responseStatus successful }, without response bytes
+    private static final byte[] SUCCESSFUL = {0x30, 0x03, 0x0A, 0x01, 0x00};
+    // OCSPResponse { responseStatus tryLater }
+    private static final byte[] TRY_LATER = {0x30, 0x03, 0x0A, 0x01, 0x03};
+
+    private static CertAndKeyGen ca;
+    private static X509Certificate caCertificate;
+    private static CertAndKeyGen impostorKeyPair;
+    private static X509Certificate impostor;
+    private static CertAndKeyGen leafKeyPair;
+    private static X509Certificate leaf;
+    private static X509Certificate[] chain;
+
+    @BeforeClass
+    public static void prepare() throws Exception
+    {
+        ca = newKeyPair();
+        caCertificate = ca.getSelfCertificate(new X500Name("CN=CA"), 3600);
+        impostorKeyPair = newKeyPair();
+        impostor = impostorKeyPair.getSelfCertificate(new X500Name("CN=CA"), 3600);
+        leafKeyPair = newKeyPair();
+        leaf = newCertificate(leafKeyPair, new X500Name("CN=localhost"), caCertificate, ca.getPrivateKey());
+        chain = new X509Certificate[]{leaf, caCertificate};
+    }
+
+    @Test
+    public void testResponseIsPrefetchedAndRefreshed() throws Exception
+    {
+        X509Certificate certificate = leaf;
+        byte[] successful = response(certificate, null);
+        AtomicInteger fetches = new AtomicInteger();
+        OCSPFetcher fetcher = new OCSPFetcher()
+        {
+            @Override
+            public byte[] fetch(X509Certificate certificate, X509Certificate issuer)
+            {
+                fetches.incrementAndGet();
+                return successful;
+            }
+        };
+        try (OCSPStapler stapler = new OCSPStapler(fetcher, 50, 1000))
+        {
+            Assert.assertTrue(stapler.register(chain));
+            Assert.assertTrue(await(() -> stapler.getResponse(certificate) != null));
+            Assert.assertArrayEquals(successful, stapler.getResponse(certificate));
+            Assert.assertTrue(await(() -> fetches.get() >= 3));
+        }
+    }
+
+    @Test
+    public void testChainWithoutIssuerIsNotStapled() throws Exception
+    {
+        X509Certificate certificate = leaf;
+        try (OCSPStapler stapler = new OCSPStapler((c, i) -> response(c, null), 1000, 1000))
+        {
+            Assert.assertFalse(stapler.register(new X509Certificate[]{certificate}));
+            // The second certificate has the name of the issuer, but did not sign the certificate.
+            Assert.assertFalse(stapler.register(new X509Certificate[]{certificate, impostor}));
+            Assert.assertFalse(stapler.register(new X509Certificate[]{certificate, certificate}));
+            Assert.assertNull(stapler.getResponse(certificate));
+            // The issuer is found by name, not by position.
+            Assert.assertTrue(stapler.register(new X509Certificate[]{certificate, impostor, caCertificate}));
+        }
+    }
+
+    @Test
+    public void testUnsuccessfulResponseIsNotStapled() throws Exception
+    {
+        X509Certificate certificate = leaf;
+        AtomicInteger fetches = new AtomicInteger();
+        try (OCSPStapler stapler = new OCSPStapler((c, i) ->
+        {
+            fetches.incrementAndGet();
+            return TRY_LATER;
+        }, 50, 1000))
+        {
+            stapler.register(chain);
+            Assert.assertTrue(await(() -> fetches.get() >= 2));
+            Assert.assertNull(stapler.getResponse(certificate));
+        }
+    }
+
+    @Test
+    public void testResponseWithoutCertificateStatusIsNotStapled() throws Exception
+    {
+        X509Certificate certificate = leaf;
+        AtomicInteger fetches = new AtomicInteger();
+        try (OCSPStapler stapler = new OCSPStapler((c, i) ->
+        {
+            fetches.incrementAndGet();
+            return SUCCESSFUL;
+        }, 50, 1000))
+        {
+            stapler.register(chain);
+            Assert.assertTrue(await(() -> fetches.get() >= 2));
+            Assert.assertNull(stapler.getResponse(certificate));
+        }
+    }
+
+    @Test
+    public void testResponseNotStapledAfterNextUpdate() throws Exception
+    {
+        X509Certificate certificate = leaf;
+        byte[] response = response(certificate, new Date(System.currentTimeMillis() + 2000));
+        try (OCSPStapler stapler = new OCSPStapler((c, i) -> response, 60000, 60000))
+        {
+            stapler.register(chain);
+            Assert.assertTrue(await(() -> stapler.getResponse(certificate) != null));
+            // The response is not refreshed, and expires at its nextUpdate time.
+            Assert.assertTrue(await(() -> stapler.getResponse(certificate) == null));
+        }
+    }
+
+    @Test
+    public void testUnregisterStopsRefreshing() throws Exception
+    {
+        X509Certificate certificate = leaf;
+        byte[] successful = response(certificate, null);
+        AtomicInteger fetches = new AtomicInteger();
+        try (OCSPStapler stapler = new OCSPStapler((c, i) ->
+        {
+            fetches.incrementAndGet();
+            return successful;
+        }, 50, 1000))
+        {
+            stapler.register(chain);
+            Assert.assertTrue(await(() -> stapler.getResponse(certificate) != null));
+            Assert.assertTrue(stapler.unregister(certificate));
+            Assert.assertNull(stapler.getResponse(certificate));
+            int count = fetches.get();
+            Thread.sleep(200);
+            Assert.assertEquals(count, fetches.get());
+            Assert.assertFalse(stapler.unregister(certificate));
+        }
+    }
+
+    @Test
+    public void testPreviousResponseKeptWhenResponderFails() throws Exception
+    {
+        X509Certificate certificate = leaf;
+        byte[] successful = response(certificate, null);
+        AtomicBoolean fail = new AtomicBoolean();
+        AtomicInteger failures = new AtomicInteger();
+        try (OCSPStapler stapler = new OCSPStapler((c, i) ->
+        {
+            if (fail.get())
+            {
+                failures.incrementAndGet();
+                throw new IOException("Responder down");
+            }
+            return successful;
+        }, 50, 60000))
+        {
+            stapler.register(chain);
+            Assert.assertTrue(await(() -> stapler.getResponse(certificate) != null));
+            fail.set(true);
+            Assert.assertTrue(await(() -> failures.get() >= 2));
+            Assert.assertArrayEquals(successful, stapler.getResponse(certificate));
+        }
+    }
+
+    @Test
+    public void testResponseIsStapledToHandshake() throws Exception
+    {
+        byte[] response = response(leaf, null);
+        SSLContext sslContext = newSSLContext();
+        try (OCSPStapler stapler = new OCSPStapler((c, i) -> response, 60000, 60000))
+        {
+            OCSPStapler.install(sslContext.getServerSessionContext(), stapler);
+            Assert.assertTrue(stapler.register(chain));
+            Assert.assertTrue(await(() -> stapler.getResponse(leaf) != null));
+
+            Assert.assertNull(certificateStatus(sslContext, false));
+            Assert.assertArrayEquals(response, certificateStatus(sslContext, true));
+        }
+        finally
+        {
+            OCSPStapler.uninstall(sslContext.getServerSessionContext());
+        }
+    }
+
+    @Test
+    public void testStapledResponseIsUsedByClient() throws Exception
+    {
+        byte[] response = response(leaf, null);
+        SSLContext sslContext = newSSLContext();
+        AtomicInteger checks = new AtomicInteger();
+        try (OCSPStapler stapler = new OCSPStapler((c, i) -> response, 60000, 60000);
+             RevocationCache cache = new RevocationCache((c, i) ->
+             {
+                 checks.incrementAndGet();
+                 return new RevocationCache.Result(RevocationCache.Status.GOOD, 0);
+             }, 16, 60000, true))
+        {
+            OCSPStapler.install(sslContext.getServerSessionContext(), stapler);
+            RevocationCache.install(sslContext.getClientSessionContext(), cache);
+            Assert.assertTrue(stapler.register(chain));
+            Assert.assertTrue(await(() -> stapler.getResponse(leaf) != null));
+
+            handshake(sslContext);
+            // The status came from the stapled response, not from the checker.
+            Assert.assertEquals(0, checks.get());
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertSame(RevocationCache.Status.GOOD, cache.check(leaf, caCertificate));
+            Assert.assertEquals(0, checks.get());
+        }
+        finally
+        {
+            OCSPStapler.uninstall(sslContext.getServerSessionContext());
+            RevocationCache.uninstall(sslContext.getClientSessionContext());
+        }
+    }
+
+    @Test
+    public void testStapledRevokedResponseFailsHandshake() throws Exception
+    {
+        byte[] response = response(leaf, true, null, ca.getPrivateKey());
+        SSLContext sslContext = newSSLContext();
+        AtomicInteger checks = new AtomicInteger();
+        try (OCSPStapler stapler = new OCSPStapler((c, i) -> response, 60000, 60000);
+             RevocationCache cache = new RevocationCache((c, i) ->
+             {
+                 checks.incrementAndGet();
+                 return new RevocationCache.Result(RevocationCache.Status.GOOD, 0);
+             }, 16, 60000, true))
+        {
+            OCSPStapler.install(sslContext.getServerSessionContext(), stapler);
+            RevocationCache.install(sslContext.getClientSessionContext(), cache);
+            Assert.assertTrue(stapler.register(chain));
+            Assert.assertTrue(await(() -> stapler.getResponse(leaf) != null));
+
+            try
+            {
+                handshake(sslContext);
+                Assert.fail();
+            }
+            catch (SSLException x)
+            {
+                // Expected, the server certificate is revoked.
+            }
+            Assert.assertEquals(0, checks.get());
+        }
+        finally
+        {
+            OCSPStapler.uninstall(sslContext.getServerSessionContext());
+            RevocationCache.uninstall(sslContext.getClientSessionContext());
+        }
+    }
+
+    @Test
+    public void testResponseNotSignedByIssuerIsNotStapled() throws Exception
+    {
+        X509Certificate certificate = leaf;
+        byte[] forged = response(certificate, false, null, impostorKeyPair.getPrivateKey());
+        AtomicInteger fetches = new AtomicInteger();
+        try (OCSPStapler stapler = new OCSPStapler((c, i) ->
+        {
+            fetches.incrementAndGet();
+            return forged;
+        }, 50, 1000))
+        {
+            stapler.register(chain);
+            Assert.assertTrue(await(() -> fetches.get() >= 2));
+            Assert.assertNull(stapler.getResponse(certificate));
+        }
+    }
+
+    /**
+     * @return a context with the key of the leaf certificate, that trusts the CA
+     */
+    private static SSLContext newSSLContext() throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("server", leafKeyPair.getPrivateKey(), "keypwd".toCharArray(), chain);
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+        keyManagerFactory.init(keyStore, "keypwd".toCharArray());
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("ca", caCertificate);
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance("SunX509");
+        trustManagerFactory.init(trustStore);
+        return SSLSupport.newSSLContext(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers());
+    }
+
+    private static void handshake(SSLContext sslContext) throws Exception
+    {
+        SSLEngine client = sslContext.createSSLEngine();
+        client.setUseClientMode(true);
+        SSLEngine server = sslContext.createSSLEngine();
+        server.setUseClientMode(false);
+        SSLSupport.handshake(client, server);
+    }
+
+    /**
+     * @return the OCSP response of the CertificateStatus message that
+     * follows the server Certificate message, or null if there is none
+     */
+    private static byte[] certificateStatus(SSLContext sslContext, boolean statusRequest) throws Exception
+    {
+        SSLEngine client = sslContext.createSSLEngine();
+        client.setUseClientMode(true);
+        ByteBuffer clientHello = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+        client.wrap(ByteBuffer.allocate(0), clientHello);
+        clientHello.flip();
+        // status_type ocsp, empty responder_id_list and request_extensions.
+        if (statusRequest)
+            clientHello = SSLSupport.withExtension(clientHello, EXT_STATUS_REQUEST, new byte[]{1, 0, 0, 0, 0});
+
+        SSLEngine server = sslContext.createSSLEngine();
+        server.setUseClientMode(false);
+        SSLEngineResult result = server.unwrap(clientHello, ByteBuffer.allocate(server.getSession().getApplicationBufferSize()));
+        Assert.assertSame(SSLEngineResult.Status.OK, result.getStatus());
+        Runnable task;
+        while ((task = server.getDelegatedTask()) != null)
+            task.run();
+
+        // The first server flight is not encrypted.
+        ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+        while (server.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP)
+        {
+            ByteBuffer encrypted = ByteBuffer.allocate(server.getSession().getPacketBufferSize());
+            server.wrap(ByteBuffer.allocate(0), encrypted);
+            encrypted.flip();
+            while (encrypted.hasRemaining())
+            {
+                byte type = encrypted.get();
+                encrypted.getShort();
+                byte[] fragment = new byte[encrypted.getShort() & 0xFFFF];
+                encrypted.get(fragment);
+                if (type == 22)
+                    handshake.write(fragment, 0, fragment.length);
+            }
+        }
+
+        ByteBuffer messages = ByteBuffer.wrap(handshake.toByteArray());
+        int previous = -1;
+        while (messages.hasRemaining())
+        {
+            int type = messages.get() & 0xFF;
+            int length = (messages.get() & 0xFF) << 16 | messages.getShort() & 0xFFFF;
+            int next = messages.position() + length;
+            if (type == HT_CERTIFICATE_STATUS)
+            {
+                Assert.assertEquals(HT_CERTIFICATE, previous);
+                Assert.assertEquals(1, messages.get());
+                byte[] response = new byte[(messages.get() & 0xFF) << 16 | messages.getShort() & 0xFFFF];
+                messages.get(response);
+                Assert.assertEquals(next, messages.position());
+                return response;
+            }
+            messages.position(next);
+            previous = type;
+        }
+        return null;
+    }
+
+    private static boolean await(Condition condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline)
+        {
+            if (condition.test())
+                return true;
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static byte[] response(X509Certificate certificate, Date nextUpdate) throws IOException
+    {
+        return response(certificate, false, nextUpdate, ca.getPrivateKey());
+    }
+
+    /**
+     * @return a successful basic OCSPResponse with the status of the certificate issued by the CA
+     */
+    private static byte[] response(X509Certificate certificate, boolean revoked, Date nextUpdate, PrivateKey signer) throws IOException
+    {
+        try
+        {
+            DerOutputStream hashAlgorithm = new DerOutputStream();
+            hashAlgorithm.putOID(new ObjectIdentifier("1.3.14.3.2.26"));
+            hashAlgorithm.putNull();
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            DerValue publicKeyInfo = new DerValue(caCertificate.getPublicKey().getEncoded());
+            publicKeyInfo.data.getDerValue();
+            DerOutputStream certID = new DerOutputStream();
+            certID.write(DerValue.tag_Sequence, hashAlgorithm);
+            certID.putOctetString(sha1.digest(caCertificate.getSubjectX500Principal().getEncoded()));
+            certID.putOctetString(sha1.digest(publicKeyInfo.data.getUnalignedBitString().toByteArray()));
+            certID.putInteger(certificate.getSerialNumber());
+            DerOutputStream singleResponse = new DerOutputStream();
+            singleResponse.write(DerValue.tag_Sequence, certID);
+            if (revoked)
+            {
+                // certStatus revoked [1] IMPLICIT RevokedInfo { revocationTime }
+                DerOutputStream revokedInfo = new DerOutputStream();
+                revokedInfo.putGeneralizedTime(new Date());
+                singleResponse.write(DerValue.createTag(DerValue.TAG_CONTEXT, true, (byte)1), revokedInfo);
+            }
+            else
+            {
+                // certStatus good [0] IMPLICIT NULL
+                singleResponse.write(DerValue.createTag(DerValue.TAG_CONTEXT, false, (byte)0), new byte[0]);
+            }
+            singleResponse.putGeneralizedTime(new Date());
+            if (nextUpdate != null)
+            {
+                DerOutputStream time = new DerOutputStream();
+                time.putGeneralizedTime(nextUpdate);
+                singleResponse.write(DerValue.createTag(DerValue.TAG_CONTEXT, true, (byte)0), time);
+            }
+            DerOutputStream responses = new DerOutputStream();
+            responses.write(DerValue.tag_Sequence, singleResponse);
+            DerOutputStream keyHash = new DerOutputStream();
+            keyHash.putOctetString(new byte[20]);
+            DerOutputStream responseData = new DerOutputStream();
+            responseData.write(DerValue.createTag(DerValue.TAG_CONTEXT, true, (byte)2), keyHash);
+            responseData.putGeneralizedTime(new Date());
+            responseData.write(DerValue.tag_Sequence, responses);
+            DerOutputStream tbsResponseData = new DerOutputStream();
+            tbsResponseData.write(DerValue.tag_Sequence, responseData);
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(signer);
+            signature.update(tbsResponseData.toByteArray());
+            DerOutputStream basic = new DerOutputStream();
+            basic.write(tbsResponseData.toByteArray());
+            AlgorithmId.get("SHA256withRSA").encode(basic);
+            basic.putBitString(signature.sign());
+            DerOutputStream basicResponse = new DerOutputStream();
+            basicResponse.write(DerValue.tag_Sequence, basic);
+            DerOutputStream bytes = new DerOutputStream();
+            bytes.putOID(new ObjectIdentifier("1.3.6.1.5.5.7.48.1.1"));
+            bytes.putOctetString(basicResponse.toByteArray());
+            DerOutputStream responseBytes = new DerOutputStream();
+            responseBytes.write(DerValue.tag_Sequence, bytes);
+            DerOutputStream ocspResponse = new DerOutputStream();
+            ocspResponse.putEnumerated(0);
+            ocspResponse.write(DerValue.createTag(DerValue.TAG_CONTEXT, true, (byte)0), responseBytes);
+            DerOutputStream result = new DerOutputStream();
+            result.write(DerValue.tag_Sequence, ocspResponse);
+            return result.toByteArray();
+        }
+        catch (GeneralSecurityException x)
+        {
+            throw new IOException(x);
+        }
+    }
+
+    private static CertAndKeyGen newKeyPair() throws Exception
+    {
+        CertAndKeyGen keyPair = new CertAndKeyGen("RSA", "SHA256withRSA");
+        keyPair.generate(1024);
+        return keyPair;
+    }
+
+    private static X509Certificate newCertificate(CertAndKeyGen keyPair, X500Name subject, X509Certificate issuer, PrivateKey issuerKey) throws Exception
+    {
+        X509CertInfo info = new X509CertInfo(keyPair.getSelfCertificate(subject, 3600).getTBSCertificate());
+        info.set(X509CertInfo.ISSUER, new X500Name(issuer.getSubjectX500Principal().getEncoded()));
+        X509CertImpl certificate = new X509CertImpl(info);
+        certificate.sign(issuerKey, "SHA256withRSA");
+        return certificate;
+    }
+
+    private interface Condition
+    {
+        boolean test();
+    }
+}
@@ -0,0 +1,159 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import sun.security.ssl.RevocationCache;
+import sun.security.tools.keytool.CertAndKeyGen;
+import sun.security.x509.X500Name;
+import sun.security.x509.X509CertImpl;
+import sun.security.x509.X509CertInfo;
+
+public class RevocationCacheTest
+{
+    @Test
+    public void testBlockingCheckIsCached() throws Exception
+    {
+        X509Certificate certificate = certificate();
+        AtomicInteger checks = new AtomicInteger();
+        try (RevocationCache cache = new RevocationCache((c, i) ->
+        {
+            checks.incrementAndGet();
+            return new RevocationCache.Result(RevocationCache.Status.GOOD, 0);
+        }, 16, 60000, true))
+        {
+            Assert.assertSame(RevocationCache.Status.GOOD, cache.check(certificate, certificate));
+            Assert.assertSame(RevocationCache.Status.GOOD, cache.check(certificate, certificate));
+            Assert.assertEquals(1, checks.get());
+            Assert.assertEquals(1, cache.getHits());
+            Assert.assertEquals(1, cache.getMisses());
+        }
+    }
+
+    @Test
+    public void testRevokedCertificate() throws Exception
+    {
+        X509Certificate certificate = certificate();
+        try (RevocationCache cache = new RevocationCache((c, i) -> new RevocationCache.Result(RevocationCache.Status.REVOKED, 0), 16, 60000, true))
+        {
+            Assert.assertSame(RevocationCache.Status.REVOKED, cache.check(certificate, certificate));
+        }
+    }
+
+    @Test
+    public void testStatusExpiresAtNextUpdate() throws Exception
+    {
+        X509Certificate certificate = certificate();
+        AtomicInteger checks = new AtomicInteger();
+        try (RevocationCache cache = new RevocationCache((c, i) ->
+        {
+            checks.incrementAndGet();
+            return new RevocationCache.Result(RevocationCache.Status.GOOD, System.currentTimeMillis() + 100);
+        }, 16, 60000, true))
+        {
+            cache.check(certificate, certificate);
+            Thread.sleep(200);
+            cache.check(certificate, certificate);
+            Assert.assertEquals(2, checks.get());
+        }
+    }
+
+    @Test
+    public void testNonBlockingCheckDoesNotWait() throws Exception
+    {
+        X509Certificate certificate = certificate();
+        try (RevocationCache cache = new RevocationCache((c, i) ->
+        {
+            try
+            {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException x)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return new RevocationCache.Result(RevocationCache.Status.GOOD, 0);
+        }, 16, 60000, false))
+        {
+            long start = System.nanoTime();
+            Assert.assertSame(RevocationCache.Status.UNKNOWN, cache.check(certificate, certificate));
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            RevocationCache.Status status = RevocationCache.Status.UNKNOWN;
+            while (status == RevocationCache.Status.UNKNOWN && System.nanoTime() < deadline)
+            {
+                Thread.sleep(20);
+                status = cache.check(certificate, certificate);
+            }
+            Assert.assertSame(RevocationCache.Status.GOOD, status);
+        }
+    }
+
+    @Test
+    public void testIssuerMustBeNamedAndSignTheCertificate() throws Exception
+    {
+        CertAndKeyGen ca = newKeyPair();
+        X509Certificate caCertificate = ca.getSelfCertificate(new X500Name("CN=CA"), 3600);
+        // Same name as the CA, different key.
+        X509Certificate impostor = newKeyPair().getSelfCertificate(new X500Name("CN=CA"), 3600);
+        X509Certificate leaf = newCertificate(new X500Name("CN=leaf"), caCertificate, ca.getPrivateKey());
+
+        Assert.assertSame(caCertificate, RevocationCache.findIssuer(leaf, leaf, caCertificate));
+        Assert.assertSame(caCertificate, RevocationCache.findIssuer(leaf, impostor, caCertificate));
+        Assert.assertNull(RevocationCache.findIssuer(leaf, leaf, impostor));
+        Assert.assertNull(RevocationCache.findIssuer(leaf, certificate()));
+        // A self-signed certificate has no issuer to check against.
+        Assert.assertNull(RevocationCache.findIssuer(caCertificate, caCertificate));
+    }
+
+    private static CertAndKeyGen newKeyPair() throws Exception
+    {
+        CertAndKeyGen keyPair = new CertAndKeyGen("RSA", "SHA256withRSA");
+        keyPair.generate(1024);
+        return keyPair;
+    }
+
+    private static X509Certificate newCertificate(X500Name subject, X509Certificate issuer, PrivateKey issuerKey) throws Exception
+    {
+        X509CertInfo info = new X509CertInfo(newKeyPair().getSelfCertificate(subject, 3600).getTBSCertificate());
+        info.set(X509CertInfo.ISSUER, new X500Name(issuer.getSubjectX500Principal().getEncoded()));
+        X509CertImpl certificate = new X509CertImpl(info);
+        certificate.sign(issuerKey, "SHA256withRSA");
+        return certificate;
+    }
+
+    private static X509Certificate certificate() throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream input = RevocationCacheTest.class.getClassLoader().getResourceAsStream("keystore"))
+        {
+            keyStore.load(input, "storepwd".toCharArray());
+        }
+        return (X509Certificate)keyStore.getCertificate(keyStore.aliases().nextElement());
+    }
+}
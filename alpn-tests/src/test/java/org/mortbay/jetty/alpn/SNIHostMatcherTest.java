@@ -0,0 +1,167 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIMatcher;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import sun.security.ssl.SNIHostMatcher;
+
+public class SNIHostMatcherTest
+{
+    @Test
+    public void testExactHostNames() throws Exception
+    {
+        SNIHostMatcher matcher = new SNIHostMatcher(Arrays.asList("www.example.com", "API.Example.org"));
+        Assert.assertTrue(matcher.matches(new SNIHostName("www.example.com")));
+        Assert.assertTrue(matcher.matches(new SNIHostName("WWW.EXAMPLE.COM")));
+        Assert.assertTrue(matcher.matches(new SNIHostName("api.example.org")));
+        Assert.assertFalse(matcher.matches(new SNIHostName("example.com")));
+        Assert.assertFalse(matcher.matches(new SNIHostName("foo.www.example.com")));
+    }
+
+    @Test
+    public void testWildcardHostNames() throws Exception
+    {
+        SNIHostMatcher matcher = new SNIHostMatcher(Arrays.asList("*.example.com"));
+        Assert.assertTrue(matcher.matches(new SNIHostName("www.example.com")));
+        Assert.assertTrue(matcher.matches(new SNIHostName("Api.Example.Com")));
+        // Wildcards match exactly one label.
+        Assert.assertFalse(matcher.matches(new SNIHostName("example.com")));
+        Assert.assertFalse(matcher.matches(new SNIHostName("foo.www.example.com")));
+    }
+
+    @Test
+    public void testHandshakeWithMatchedHostName() throws Exception
+    {
+        SSLEngine server = handshake("host1234.example.com");
+        Assert.assertNotNull(server.getSession().getCipherSuite());
+    }
+
+    @Test
+    public void testHandshakeWithWildcardHostName() throws Exception
+    {
+        handshake("www.domain1230.com");
+    }
+
+    @Test
+    public void testHandshakeWithUnmatchedHostNameIsRejected() throws Exception
+    {
+        try
+        {
+            handshake("www.example.org");
+            Assert.fail();
+        }
+        catch (SSLException x)
+        {
+            // Expected, the server rejects the client with an unrecognized_name alert.
+        }
+    }
+
+    private SSLEngine handshake(String host) throws Exception
+    {
+        SSLContext sslContext = SSLSupport.newSSLContext();
+        SSLEngine client = sslContext.createSSLEngine();
+        client.setUseClientMode(true);
+        SSLParameters clientParameters = client.getSSLParameters();
+        clientParameters.setServerNames(Collections.<SNIServerName>singletonList(new SNIHostName(host)));
+        client.setSSLParameters(clientParameters);
+
+        // The server handshake asks the matchers of its SSLParameters
+        // whether it serves the requested host name.
+        SSLEngine server = sslContext.createSSLEngine();
+        server.setUseClientMode(false);
+        SSLParameters serverParameters = server.getSSLParameters();
+        serverParameters.setSNIMatchers(Collections.<SNIMatcher>singletonList(new SNIHostMatcher(hostNames(100000))));
+        server.setSSLParameters(serverParameters);
+
+        SSLSupport.handshake(client, server);
+        return server;
+    }
+
+    @Ignore("Micro benchmark, timing dependent")
+    @Test
+    public void testBenchmark() throws Exception
+    {
+        for (int size : new int[]{10, 1000, 100000})
+        {
+            List<String> hostNames = hostNames(size);
+            SNIHostMatcher matcher = new SNIHostMatcher(hostNames);
+            SNIMatcher regex = SNIHostName.createSNIMatcher(toRegex(hostNames));
+
+            SNIHostName[] requests = new SNIHostName[1024];
+            for (int i = 0; i < requests.length; ++i)
+            {
+                int index = (i * 7919) % size;
+                requests[i] = new SNIHostName(index % 10 == 0 ? "www.domain" + index + ".com" : "host" + index + ".example.com");
+            }
+
+            long matcherTime = benchmark(matcher, requests, 1000000);
+            // The regular expression tries the hosts one by one, so it is given fewer iterations.
+            long regexTime = benchmark(regex, requests, Math.max(100, 1000000 / size));
+            System.err.printf("%d host names: SNIHostMatcher %d ns/match, regex %d ns/match%n", size, matcherTime, regexTime);
+            if (size >= 1000)
+                Assert.assertTrue(matcherTime < regexTime);
+        }
+    }
+
+    private List<String> hostNames(int size)
+    {
+        List<String> hostNames = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i)
+            hostNames.add(i % 10 == 0 ? "*.domain" + i + ".com" : "host" + i + ".example.com");
+        return hostNames;
+    }
+
+    private long benchmark(SNIMatcher matcher, SNIHostName[] requests, int iterations)
+    {
+        // Warm up.
+        for (int i = 0; i < iterations / 10; ++i)
+            Assert.assertTrue(matcher.matches(requests[i % requests.length]));
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; ++i)
+            Assert.assertTrue(matcher.matches(requests[i % requests.length]));
+        return (System.nanoTime() - begin) / iterations;
+    }
+
+    private String toRegex(List<String> hostNames)
+    {
+        StringBuilder builder = new StringBuilder("(?i)");
+        for (int i = 0; i < hostNames.size(); ++i)
+        {
+            if (i > 0)
+                builder.append("|");
+            String hostName = hostNames.get(i).replace(".", "\\.");
+            builder.append(hostName.startsWith("*") ? "[^.]+" + hostName.substring(1) : hostName);
+        }
+        return builder.toString();
+    }
+}
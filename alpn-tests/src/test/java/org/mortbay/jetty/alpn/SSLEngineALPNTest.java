@@ -23,6 +23,7 @@ import java.util.Random;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSession;
 
 import org.eclipse.jetty.alpn.ALPN;
@@ -33,7 +34,7 @@ public class SSLEngineALPNTest extends AbstractALPNTest<SSLEngine>
     @Override
     protected SSLResult<SSLEngine> performTLSHandshake(SSLResult<SSLEngine> handshake, ALPN.ClientProvider clientProvider, ALPN.ServerProvider serverProvider) throws Exception
     {
-        SSLContext sslContext = handshake == null ? SSLSupport.newSSLContext() : handshake.context;
+        SSLContext sslContext = handshake == null ? newSSLContext() : handshake.context;
         SSLResult<SSLEngine> sslResult = new SSLResult<>();
         sslResult.context = sslContext;
         // Use host and port to allow for session resumption.
@@ -42,10 +43,22 @@ public class SSLEngineALPNTest extends AbstractALPNTest<SSLEngine>
         SSLEngine clientSSLEngine = sslContext.createSSLEngine("localhost", clientPort);
         sslResult.client = clientSSLEngine;
         clientSSLEngine.setUseClientMode(true);
+        if (clientProtocols != null)
+            clientSSLEngine.setEnabledProtocols(clientProtocols);
+        if (clientCipherSuites != null)
+            clientSSLEngine.setEnabledCipherSuites(clientCipherSuites);
+        if (clientServerNames != null)
+        {
+            SSLParameters parameters = clientSSLEngine.getSSLParameters();
+            parameters.setServerNames(clientServerNames);
+            clientSSLEngine.setSSLParameters(parameters);
+        }
         int serverPort = handshake == null ? randomPort + 1 : handshake.server.getPeerPort();
         SSLEngine serverSSLEngine = sslContext.createSSLEngine("localhost", serverPort);
         sslResult.server = serverSSLEngine;
         serverSSLEngine.setUseClientMode(false);
+        if (needClientAuth)
+            serverSSLEngine.setNeedClientAuth(true);
 
         ByteBuffer encrypted = ByteBuffer.allocate(clientSSLEngine.getSession().getPacketBufferSize());
         ByteBuffer decrypted = ByteBuffer.allocate(clientSSLEngine.getSession().getApplicationBufferSize());
@@ -23,6 +23,7 @@ import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
@@ -45,7 +46,7 @@ public class SSLSocketALPNTest extends AbstractALPNTest<SSLSocket>
     @Override
     protected SSLResult<SSLSocket> performTLSHandshake(SSLResult<SSLSocket> handshake, ALPN.ClientProvider clientProvider, final ALPN.ServerProvider serverProvider) throws Exception
     {
-        SSLContext sslContext = handshake == null ? SSLSupport.newSSLContext() : handshake.context;
+        SSLContext sslContext = handshake == null ? newSSLContext() : handshake.context;
 
         final CountDownLatch latch = new CountDownLatch(2);
         final SSLResult<SSLSocket> sslResult = new SSLResult<>();
@@ -69,6 +70,8 @@ public class SSLSocketALPNTest extends AbstractALPNTest<SSLSocket>
                     sslResult.server = serverSSLSocket;
 
                     serverSSLSocket.setUseClientMode(false);
+                    if (needClientAuth)
+                        serverSSLSocket.setNeedClientAuth(true);
                     serverSSLSocket.setSoTimeout(readTimeout);
                     ALPN.put(serverSSLSocket, serverProvider);
                     serverSSLSocket.startHandshake();
@@ -86,6 +89,16 @@ public class SSLSocketALPNTest extends AbstractALPNTest<SSLSocket>
         latch.countDown();
 
         clientSSLSocket.setUseClientMode(true);
+        if (clientProtocols != null)
+            clientSSLSocket.setEnabledProtocols(clientProtocols);
+        if (clientCipherSuites != null)
+            clientSSLSocket.setEnabledCipherSuites(clientCipherSuites);
+        if (clientServerNames != null)
+        {
+            SSLParameters parameters = clientSSLSocket.getSSLParameters();
+            parameters.setServerNames(clientServerNames);
+            clientSSLSocket.setSSLParameters(parameters);
+        }
         clientSSLSocket.setSoTimeout(readTimeout);
         ALPN.put(clientSSLSocket, clientProvider);
         clientSSLSocket.startHandshake();
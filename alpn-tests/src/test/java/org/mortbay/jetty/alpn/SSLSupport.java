@@ -21,11 +21,15 @@ package org.mortbay.jetty.alpn;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 
@@ -36,19 +40,106 @@ public class SSLSupport
     }
 
     public static SSLContext newSSLContext() throws Exception
+    {
+        return newSSLContext(newKeyManagers(), newTrustManagers());
+    }
+
+    public static KeyManager[] newKeyManagers() throws Exception
     {
         KeyStore keyStore = getKeyStore("keystore", "storepwd");
-        KeyManager[] keyManagers = getKeyManagers(keyStore, "keypwd");
+        return getKeyManagers(keyStore, "keypwd");
+    }
 
+    public static TrustManager[] newTrustManagers() throws Exception
+    {
         KeyStore trustStore = getKeyStore("truststore", "storepwd");
-        TrustManager[] trustManagers = getTrustManagers(trustStore);
+        return getTrustManagers(trustStore);
+    }
 
+    public static SSLContext newSSLContext(KeyManager[] keyManagers, TrustManager[] trustManagers) throws Exception
+    {
         SecureRandom secureRandom = SecureRandom.getInstance("SHA1PRNG");
         SSLContext context = SSLContext.getInstance("TLSv1");
         context.init(keyManagers, trustManagers, secureRandom);
         return context;
     }
 
+    /**
+     * <p>Performs the handshake between two engines, in memory.</p>
+     *
+     * @throws SSLException if the handshake fails
+     */
+    public static void handshake(SSLEngine client, SSLEngine server) throws Exception
+    {
+        ByteBuffer clientToServer = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+        ByteBuffer serverToClient = ByteBuffer.allocate(server.getSession().getPacketBufferSize());
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int i = 0; i < 100; ++i)
+        {
+            if (client.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING &&
+                    server.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING)
+                return;
+            step(client, serverToClient, clientToServer);
+            step(server, clientToServer, serverToClient);
+        }
+        throw new SSLException("Handshake did not complete");
+    }
+
+    private static void step(SSLEngine engine, ByteBuffer input, ByteBuffer output) throws SSLException
+    {
+        switch (engine.getHandshakeStatus())
+        {
+            case NEED_WRAP:
+                engine.wrap(ByteBuffer.allocate(0), output);
+                break;
+            case NEED_UNWRAP:
+                input.flip();
+                engine.unwrap(input, ByteBuffer.allocate(engine.getSession().getApplicationBufferSize()));
+                input.compact();
+                break;
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null)
+                    task.run();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * <p>Returns a copy of a ClientHello record with an extension appended.</p>
+     */
+    public static ByteBuffer withExtension(ByteBuffer record, int type, byte[] data)
+    {
+        // Skip the record header, the handshake header, the version,
+        // the random and the session ID, the cipher suites and the
+        // compression methods, to reach the extensions.
+        int offset = 5 + 4 + 2 + 32;
+        offset += 1 + (record.get(offset) & 0xFF);
+        offset += 2 + (record.getShort(offset) & 0xFFFF);
+        offset += 1 + (record.get(offset) & 0xFF);
+        int extensionsLength = record.getShort(offset) & 0xFFFF;
+        int extension = 2 + 2 + data.length;
+
+        ByteBuffer result = ByteBuffer.allocate(record.remaining() + extension);
+        ByteBuffer prefix = record.duplicate();
+        prefix.limit(offset);
+        result.put(prefix);
+        result.putShort((short)(extensionsLength + extension));
+        ByteBuffer extensions = record.duplicate();
+        extensions.position(offset + 2);
+        result.put(extensions);
+        result.putShort((short)type).putShort((short)data.length).put(data);
+        result.flip();
+        result.putShort(3, (short)((record.getShort(3) & 0xFFFF) + extension));
+        int messageLength = ((record.get(6) & 0xFF) << 16 | (record.getShort(7) & 0xFFFF)) + extension;
+        result.put(6, (byte)(messageLength >>> 16));
+        result.putShort(7, (short)messageLength);
+        return result;
+    }
+
     private static KeyStore getKeyStore(String keyStoreResource, String keyStorePassword) throws Exception
     {
         if (keyStoreResource == null)
@@ -0,0 +1,239 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2014 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.mortbay.jetty.alpn;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLSession;
+
+import org.eclipse.jetty.alpn.ALPN;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import sun.security.ssl.FileSessionTicketKeyProvider;
+import sun.security.ssl.SessionState;
+import sun.security.ssl.SessionTickets;
+
+public class SessionTicketsTest
+{
+    private static final String KEY1 = "000102030405060708090a0b0c0d0e0f 101112131415161718191a1b1c1d1e1f";
+    private static final String KEY2 = "202122232425262728292a2b2c2d2e2f 303132333435363738393a3b3c3d3e3f";
+
+    private Path keysFile;
+
+    @Before
+    public void prepare() throws Exception
+    {
+        keysFile = Files.createTempFile("tickets", ".keys");
+        writeKeys("# Session ticket keys", KEY1);
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        Files.deleteIfExists(keysFile);
+    }
+
+    @Test
+    public void testTicketOpensOnAnotherSSLContext() throws Exception
+    {
+        SSLSession serverSession = handshake();
+
+        FileSessionTicketKeyProvider node1 = new FileSessionTicketKeyProvider(keysFile, 0);
+        byte[] ticket = SessionTickets.seal(serverSession, "h2", node1);
+        Assert.assertNotNull(ticket);
+
+        // Another node reads the same keys file.
+        FileSessionTicketKeyProvider node2 = new FileSessionTicketKeyProvider(keysFile, 0);
+        SessionState state = SessionTickets.open(ticket, node2);
+        Assert.assertNotNull(state);
+        Assert.assertEquals(serverSession.getCipherSuite(), state.getCipherSuite());
+        Assert.assertEquals(serverSession.getProtocol(), state.getProtocolVersion());
+        Assert.assertEquals("h2", state.getApplicationProtocol());
+        Assert.assertFalse(state.isExpired(60));
+    }
+
+    @Test
+    public void testTamperedTicketIsRejected() throws Exception
+    {
+        FileSessionTicketKeyProvider keys = new FileSessionTicketKeyProvider(keysFile, 0);
+        byte[] ticket = SessionTickets.seal(handshake(), null, keys);
+        ticket[ticket.length - 1] ^= 1;
+        Assert.assertNull(SessionTickets.open(ticket, keys));
+        Assert.assertNull(SessionTickets.open(new byte[8], keys));
+    }
+
+    @Test
+    public void testKeyRotation() throws Exception
+    {
+        FileSessionTicketKeyProvider keys = new FileSessionTicketKeyProvider(keysFile, 0);
+        SSLSession serverSession = handshake();
+        byte[] ticket1 = SessionTickets.seal(serverSession, null, keys);
+
+        // The new key encrypts, the old key still decrypts.
+        writeKeys(KEY2, KEY1);
+        byte[] ticket2 = SessionTickets.seal(serverSession, null, keys);
+        Assert.assertFalse(Arrays.equals(Arrays.copyOf(ticket1, 16), Arrays.copyOf(ticket2, 16)));
+        Assert.assertNotNull(SessionTickets.open(ticket1, keys));
+        Assert.assertNotNull(SessionTickets.open(ticket2, keys));
+
+        // The old key is retired.
+        writeKeys(KEY2);
+        Assert.assertNull(SessionTickets.open(ticket1, keys));
+        Assert.assertNotNull(SessionTickets.open(ticket2, keys));
+    }
+
+    @Test
+    public void testTicketResumesWithEmptySessionId() throws Exception
+    {
+        SSLSession serverSession = handshake();
+        FileSessionTicketKeyProvider keys = new FileSessionTicketKeyProvider(keysFile, 0);
+        byte[] ticket = SessionTickets.seal(serverSession, null, keys);
+
+        SSLContext sslContext = SSLSupport.newSSLContext();
+        SessionTickets.install(sslContext.getServerSessionContext(), keys);
+        try
+        {
+            // A new client has no session to resume, so its session ID is empty.
+            SSLEngine client = sslContext.createSSLEngine();
+            client.setUseClientMode(true);
+            ByteBuffer clientHello = ByteBuffer.allocate(client.getSession().getPacketBufferSize());
+            client.wrap(ByteBuffer.allocate(0), clientHello);
+            clientHello.flip();
+            Assert.assertEquals(0, clientHello.get(5 + 4 + 2 + 32));
+
+            SSLEngine server = sslContext.createSSLEngine();
+            server.setUseClientMode(false);
+            ByteBuffer decrypted = ByteBuffer.allocate(server.getSession().getApplicationBufferSize());
+            SSLEngineResult result = server.unwrap(withSessionTicket(clientHello, ticket), decrypted);
+            Assert.assertSame(SSLEngineResult.Status.OK, result.getStatus());
+            Runnable task;
+            while ((task = server.getDelegatedTask()) != null)
+                task.run();
+
+            // The resumed session is abbreviated: the ServerHello is
+            // followed by ChangeCipherSpec rather than by the Certificate.
+            boolean changeCipherSpec = false;
+            while (server.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP)
+            {
+                ByteBuffer encrypted = ByteBuffer.allocate(server.getSession().getPacketBufferSize());
+                server.wrap(ByteBuffer.allocate(0), encrypted);
+                encrypted.flip();
+                for (int offset = 0; offset < encrypted.limit(); offset += 5 + (encrypted.getShort(offset + 3) & 0xFFFF))
+                {
+                    if (encrypted.get(offset) == 20)
+                        changeCipherSpec = true;
+                }
+            }
+            Assert.assertTrue(changeCipherSpec);
+            Assert.assertEquals(serverSession.getCipherSuite(), server.getHandshakeSession().getCipherSuite());
+        }
+        finally
+        {
+            SessionTickets.uninstall(sslContext.getServerSessionContext());
+        }
+    }
+
+    private ByteBuffer withSessionTicket(ByteBuffer record, byte[] ticket)
+    {
+        // Skip the record header, the handshake header, the version,
+        // the random and the session ID, the cipher suites and the
+        // compression methods, to reach the extensions.
+        int offset = 5 + 4 + 2 + 32;
+        offset += 1 + (record.get(offset) & 0xFF);
+        offset += 2 + (record.getShort(offset) & 0xFFFF);
+        offset += 1 + (record.get(offset) & 0xFF);
+        int extensionsLength = record.getShort(offset) & 0xFFFF;
+        int extension = 2 + 2 + ticket.length;
+
+        ByteBuffer result = ByteBuffer.allocate(record.remaining() + extension);
+        ByteBuffer prefix = record.duplicate();
+        prefix.limit(offset);
+        result.put(prefix);
+        result.putShort((short)(extensionsLength + extension));
+        ByteBuffer extensions = record.duplicate();
+        extensions.position(offset + 2);
+        result.put(extensions);
+        result.putShort((short)0x0023).putShort((short)ticket.length).put(ticket);
+        result.flip();
+        result.putShort(3, (short)((record.getShort(3) & 0xFFFF) + extension));
+        int messageLength = ((record.get(6) & 0xFF) << 16 | (record.getShort(7) & 0xFFFF)) + extension;
+        result.put(6, (byte)(messageLength >>> 16));
+        result.putShort(7, (short)messageLength);
+        return result;
+    }
+
+    private void writeKeys(String... lines) throws Exception
+    {
+        FileTime previous = Files.exists(keysFile) ? Files.getLastModifiedTime(keysFile) : null;
+        Files.write(keysFile, Arrays.asList(lines), StandardCharsets.US_ASCII);
+        // Make sure the change is detected even with a coarse file system clock.
+        if (previous != null)
+            Files.setLastModifiedTime(keysFile, FileTime.fromMillis(previous.toMillis() + 1000));
+    }
+
+    private SSLSession handshake() throws Exception
+    {
+        SSLEngineALPNTest harness = new SSLEngineALPNTest();
+        ALPN.ClientProvider clientProvider = new ALPN.ClientProvider()
+        {
+            @Override
+            public List<String> protocols()
+            {
+                return Arrays.asList("h2");
+            }
+
+            @Override
+            public void unsupported()
+            {
+            }
+
+            @Override
+            public void selected(String protocol)
+            {
+            }
+        };
+        ALPN.ServerProvider serverProvider = new ALPN.ServerProvider()
+        {
+            @Override
+            public void unsupported()
+            {
+            }
+
+            @Override
+            public String select(List<String> protocols)
+            {
+                return protocols.get(0);
+            }
+        };
+        AbstractALPNTest.SSLResult<SSLEngine> sslResult = harness.performTLSHandshake(null, clientProvider, serverProvider);
+        SSLSession session = harness.getSSLSession(sslResult, false);
+        harness.performTLSClose(sslResult);
+        return session;
+    }
+}